@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.Debug;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+import android.text.format.Time;
+import android.util.Log;
+
+import java.text.SimpleDateFormat;
+
+/*
+    Checks the cached date strings against the ones Utility used to build from scratch on every
+    call, and measures both: calls and allocations per second over two weeks of dates, the way
+    the forecast list asks for them.  The numbers are logged rather than asserted on, since they
+    depend on the device.
+ */
+@SuppressWarnings("deprecation")
+public class TestDateFormatCache extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestDateFormatCache.class.getSimpleName();
+
+    private static final int DAYS = 14;
+    private static final int ROUNDS = 200;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        DateFormatCache.invalidate();
+    }
+
+    public void testMatchesUncachedStrings() {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < DAYS; i++) {
+            long date = now + i * DateUtils.DAY_IN_MILLIS;
+            assertEquals("Error: Friendly day string differs for day " + i,
+                    uncachedFriendlyDayString(date, false),
+                    Utility.getFriendlyDayString(mContext, date, false));
+            assertEquals("Error: Long friendly day string differs for day " + i,
+                    uncachedFriendlyDayString(date, true),
+                    Utility.getFriendlyDayString(mContext, date, true));
+        }
+        assertEquals("Error: Today isn't called today",
+                mContext.getString(R.string.today), Utility.getDayName(mContext, now));
+        assertEquals("Error: Tomorrow isn't called tomorrow",
+                mContext.getString(R.string.tomorrow),
+                Utility.getDayName(mContext, now + DateUtils.DAY_IN_MILLIS));
+    }
+
+    public void testInvalidateRebuilds() {
+        long now = System.currentTimeMillis();
+        Utility.getFormattedMonthDay(mContext, now);
+        int misses = DateFormatCache.getMissCount();
+        Utility.getFormattedMonthDay(mContext, now);
+        assertEquals("Error: A repeated call wasn't served from the cache",
+                misses, DateFormatCache.getMissCount());
+
+        DateFormatCache.invalidate();
+        Utility.getFormattedMonthDay(mContext, now);
+        assertEquals("Error: A call after invalidate() was served from the cache",
+                misses + 1, DateFormatCache.getMissCount());
+    }
+
+    public void testThroughput() {
+        final long now = System.currentTimeMillis();
+
+        Runnable uncached = new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < DAYS; i++) {
+                    uncachedFriendlyDayString(now + i * DateUtils.DAY_IN_MILLIS, i == 0);
+                }
+            }
+        };
+        Runnable cached = new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < DAYS; i++) {
+                    Utility.getFriendlyDayString(mContext, now + i * DateUtils.DAY_IN_MILLIS, i == 0);
+                }
+            }
+        };
+
+        Log.d(LOG_TAG, "Uncached: " + measure(uncached));
+        Log.d(LOG_TAG, "Cached: " + measure(cached));
+    }
+
+    private String measure(Runnable round) {
+        // Once to warm up, and for the cache to fill.
+        round.run();
+
+        Debug.startAllocCounting();
+        int allocsBefore = Debug.getThreadAllocCount();
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < ROUNDS; i++) {
+            round.run();
+        }
+        long nanos = SystemClock.elapsedRealtimeNanos() - start;
+        int allocs = Debug.getThreadAllocCount() - allocsBefore;
+        Debug.stopAllocCounting();
+
+        long calls = (long) ROUNDS * DAYS;
+        double seconds = nanos / 1e9;
+        return calls + " calls, " + (long) (calls / seconds) + " calls/s, "
+                + (long) (allocs / seconds) + " allocations/s";
+    }
+
+    // What Utility.getFriendlyDayString did before the cache.
+    private String uncachedFriendlyDayString(long dateInMillis, boolean displayLongToday) {
+        Time time = new Time();
+        time.setToNow();
+        int julianDay = Time.getJulianDay(dateInMillis, time.gmtoff);
+        int currentJulianDay = Time.getJulianDay(System.currentTimeMillis(), time.gmtoff);
+
+        if (displayLongToday && julianDay == currentJulianDay) {
+            return mContext.getString(R.string.format_full_friendly_date,
+                    mContext.getString(R.string.today),
+                    new SimpleDateFormat("MMMM dd").format(dateInMillis));
+        } else if (julianDay == currentJulianDay) {
+            return mContext.getString(R.string.today);
+        } else if (julianDay == currentJulianDay + 1) {
+            return mContext.getString(R.string.tomorrow);
+        } else if (julianDay < currentJulianDay + 7) {
+            return new SimpleDateFormat("EEEE").format(dateInMillis);
+        } else {
+            return new SimpleDateFormat("EEE MMM dd").format(dateInMillis);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.MatrixCursor;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+
+import java.util.List;
+
+/*
+    Checks the range notifications ForecastDiff works out between two forecast lists.  Removes
+    stay at the position they start at while inserts and changes move along, and neighbouring
+    ops of the same kind are merged into one range, so the expected strings spell out exactly
+    what the RecyclerView is told.
+ */
+public class TestForecastDiff extends AndroidTestCase {
+
+    private static final double HIGH = 20;
+    private static final double CHANGED_HIGH = 25;
+
+    private long mToday;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mToday = System.currentTimeMillis();
+    }
+
+    public void testDayRollover() {
+        List<ForecastItem> oldItems = items(0, 1, 2, 3, 4, 5, 6);
+        List<ForecastItem> newItems = items(1, 2, 3, 4, 5, 6, 7);
+        assertEquals("Error: Rolling over a day should drop the head and add a tail row",
+                "remove 0+1, insert 6+1", ForecastDiff.compute(oldItems, newItems).toString());
+    }
+
+    public void testUnchanged() {
+        ForecastDiff diff = ForecastDiff.compute(items(0, 1, 2), items(0, 1, 2));
+        assertTrue("Error: Identical lists should have no changes, not " + diff, diff.isEmpty());
+    }
+
+    public void testSingleChange() {
+        List<ForecastItem> oldItems = items(0, 1, 2, 3, 4, 5, 6);
+        List<ForecastItem> newItems = items(new int[] { 0, 1, 2, 3, 4, 5, 6 }, 3);
+        assertEquals("Error: Changing one day should only rebind its row",
+                "change 3+1", ForecastDiff.compute(oldItems, newItems).toString());
+    }
+
+    public void testNeighbouringChangesMerge() {
+        List<ForecastItem> oldItems = items(0, 1, 2, 3, 4);
+        List<ForecastItem> newItems = items(new int[] { 0, 1, 2, 3, 4 }, 2, 3);
+        assertEquals("Error: Changes to neighbouring days should be one range",
+                "change 2+2", ForecastDiff.compute(oldItems, newItems).toString());
+    }
+
+    public void testAllNew() {
+        List<ForecastItem> oldItems = items(0, 1, 2);
+        List<ForecastItem> newItems = items(10, 11, 12);
+        assertEquals("Error: A whole new list should remove every old row and insert every new one",
+                "remove 0+3, insert 0+3", ForecastDiff.compute(oldItems, newItems).toString());
+    }
+
+    public void testEmptyLists() {
+        List<ForecastItem> empty = items();
+        assertEquals("Error: Filling an empty list should insert every row",
+                "insert 0+3", ForecastDiff.compute(empty, items(0, 1, 2)).toString());
+        assertEquals("Error: Emptying a list should remove every row",
+                "remove 0+3", ForecastDiff.compute(items(0, 1, 2), empty).toString());
+        assertEquals("Error: Two empty lists should have no changes",
+                "no changes", ForecastDiff.compute(empty, empty).toString());
+    }
+
+    public void testInterleaved() {
+        // Day 1 goes, day 2 changes, day 3 arrives, day 4 goes and day 6 arrives.
+        List<ForecastItem> oldItems = items(0, 1, 2, 4, 5);
+        List<ForecastItem> newItems = items(new int[] { 0, 2, 3, 5, 6 }, 2);
+        assertEquals("Error: Interleaved changes should land where the list stands at the time",
+                "remove 1+1, change 1+1, insert 2+1, remove 3+1, insert 4+1",
+                ForecastDiff.compute(oldItems, newItems).toString());
+    }
+
+    private List<ForecastItem> items(int... days) {
+        return items(days, new int[0]);
+    }
+
+    // Rows for days from today, with a different high on the changed days.
+    private List<ForecastItem> items(int[] days, int... changedDays) {
+        // Laid out like ForecastFragment.FORECAST_COLUMNS, which is all ForecastItem reads.
+        MatrixCursor cursor = new MatrixCursor(new String[] { "_id", "date", "short_desc",
+                "max", "min", "location_setting", "weather_id", "coord_lat", "coord_long" });
+        for (int day : days) {
+            double high = HIGH;
+            for (int changedDay : changedDays) {
+                if (changedDay == day) {
+                    high = CHANGED_HIGH;
+                }
+            }
+            cursor.addRow(new Object[] { day, mToday + day * DateUtils.DAY_IN_MILLIS, "Clear",
+                    high, 10.0, "94043", 800, 37.4, -122.1 });
+        }
+        try {
+            return ForecastItem.fromCursor(mContext, cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Measures how long the provider's forecast query takes while a sync-sized batch of writes is
+    running on another thread, compared to the same queries with nothing else going on.  It's run
+    once per WeatherDbHelper.Profile, each on a database file of its own, so the log shows what
+    write-ahead logging gains the readers over a rollback journal.  The numbers are logged rather
+    than asserted on, since they depend on the device.
+ */
+public class TestConcurrentReads extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestConcurrentReads.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "concurrent_reads_test.db";
+
+    private static final int ROWS_PER_BULK_INSERT = 500;
+    private static final int READS_TO_TIME = 200;
+
+    private long mLocationRowId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.deleteDatabase(DATABASE_NAME);
+        super.tearDown();
+    }
+
+    public void testQueryLatencyDuringBulkInsert() throws Throwable {
+        String wal = measure(WeatherDbHelper.Profile.DEFAULT);
+        String rollbackJournal = measure(WeatherDbHelper.Profile.ROLLBACK_JOURNAL);
+
+        Log.d(LOG_TAG, "Write-ahead log: " + wal);
+        Log.d(LOG_TAG, "Rollback journal: " + rollbackJournal);
+    }
+
+    // Times the reads idle and during bulk inserts, on a fresh database with the profile.
+    private String measure(WeatherDbHelper.Profile profile) throws Throwable {
+        mContext.deleteDatabase(DATABASE_NAME);
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext, DATABASE_NAME, profile);
+        final SQLiteDatabase db = dbHelper.getWritableDatabase();
+        try {
+            mLocationRowId = db.insert(LocationEntry.TABLE_NAME, null,
+                    TestUtilities.createNorthPoleLocationValues());
+            assertTrue("Error: Failure to insert North Pole Location Values", mLocationRowId != -1);
+            bulkInsert(db, 0);
+
+            long[] idleNanos = timeReads(db);
+
+            final AtomicBoolean done = new AtomicBoolean();
+            final AtomicInteger bulkInserts = new AtomicInteger();
+            final Throwable[] writerError = new Throwable[1];
+            Thread writer = new Thread("BulkInsertWriter") {
+                @Override
+                public void run() {
+                    try {
+                        // Change every row each time round so each bulk insert really writes.
+                        for (int round = 1; !done.get(); round++) {
+                            bulkInsert(db, round);
+                            bulkInserts.incrementAndGet();
+                        }
+                    } catch (Throwable t) {
+                        writerError[0] = t;
+                    }
+                }
+            };
+            writer.start();
+            long[] busyNanos;
+            try {
+                busyNanos = timeReads(db);
+            } finally {
+                done.set(true);
+                writer.join();
+            }
+            if (writerError[0] != null) {
+                throw writerError[0];
+            }
+            assertTrue("Error: The writer never ran", bulkInserts.get() > 0);
+
+            return "query latency idle: " + describe(idleNanos) + "; during " + bulkInserts.get()
+                    + " bulk inserts of " + ROWS_PER_BULK_INSERT + " rows: " + describe(busyNanos);
+        } finally {
+            dbHelper.close();
+        }
+    }
+
+    // The query WeatherProvider runs for the forecast list.
+    private long[] timeReads(SQLiteDatabase db) {
+        String[] selectionArgs = new String[] { TestUtilities.TEST_LOCATION,
+                Long.toString(TestUtilities.TEST_DATE) };
+        long[] nanos = new long[READS_TO_TIME];
+        for (int i = 0; i < READS_TO_TIME; i++) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            Cursor cursor = WeatherProvider.sWeatherByLocationSettingQueryBuilder.query(db, null,
+                    WeatherProvider.sLocationSettingWithStartDateSelection, selectionArgs,
+                    null, null, WeatherEntry.COLUMN_DATE + " ASC");
+            // The query doesn't run until the cursor is first moved.
+            assertTrue("Error: No rows returned while timing reads", cursor.moveToFirst());
+            nanos[i] = SystemClock.elapsedRealtimeNanos() - start;
+            cursor.close();
+        }
+        return nanos;
+    }
+
+    // Writes a sync's worth of rows in one transaction, the way the provider's bulkInsert does.
+    private void bulkInsert(SQLiteDatabase db, int round) {
+        db.beginTransaction();
+        try {
+            for (ContentValues values : createWeatherValues(round)) {
+                db.replace(WeatherEntry.TABLE_NAME, null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private ContentValues[] createWeatherValues(int round) {
+        ContentValues[] values = new ContentValues[ROWS_PER_BULK_INSERT];
+        for (int i = 0; i < ROWS_PER_BULK_INSERT; i++) {
+            ContentValues weatherValues = TestUtilities.createWeatherValues(mLocationRowId);
+            weatherValues.put(WeatherEntry.COLUMN_DATE,
+                    TestUtilities.TEST_DATE + i * DateUtils.DAY_IN_MILLIS);
+            weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, 75 + round);
+            values[i] = weatherValues;
+        }
+        return values;
+    }
+
+    private static String describe(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return "median " + toMillis(sorted[sorted.length / 2])
+                + " ms, 95th percentile " + toMillis(sorted[sorted.length * 95 / 100])
+                + " ms, max " + toMillis(sorted[sorted.length - 1]) + " ms";
+    }
+
+    private static String toMillis(long nanos) {
+        return String.format("%.2f", nanos / 1000000.0);
+    }
+}
@@ -105,6 +105,38 @@ public class TestDb extends AndroidTestCase {
         db.close();
     }
 
+    // The default profile should put the database in write-ahead logging mode and apply its
+    // connection pragmas to the primary connection.
+    public void testConnectionProfile() {
+        WeatherDbHelper.Profile profile = WeatherDbHelper.Profile.DEFAULT;
+        SQLiteDatabase db = new WeatherDbHelper(this.mContext, profile).getWritableDatabase();
+
+        // Read-only statements may run on a pooled reader connection, which doesn't get the
+        // pragmas.  Inside a transaction everything runs on the primary connection.
+        db.beginTransaction();
+        try {
+            assertEquals("Error: Write-ahead logging is not enabled", "wal",
+                    queryPragma(db, "journal_mode").toLowerCase());
+            // synchronous is reported as 0 (OFF), 1 (NORMAL) or 2 (FULL)
+            assertEquals("Error: synchronous was not applied", "1", queryPragma(db, "synchronous"));
+            assertEquals("Error: cache_size was not applied", "-" + profile.cacheSizeKib,
+                    queryPragma(db, "cache_size"));
+            // temp_store is reported as 0 (DEFAULT), 1 (FILE) or 2 (MEMORY)
+            assertEquals("Error: temp_store was not applied", "2", queryPragma(db, "temp_store"));
+        } finally {
+            db.endTransaction();
+        }
+        db.close();
+    }
+
+    private static String queryPragma(SQLiteDatabase db, String pragma) {
+        Cursor c = db.rawQuery("PRAGMA " + pragma, null);
+        assertTrue("Error: Unable to read PRAGMA " + pragma, c.moveToFirst());
+        String value = c.getString(0);
+        c.close();
+        return value;
+    }
+
     /*
         Students:  Here is where you will build code to test that we can insert and query the
         location database.  We've done a lot of work for you.  You'll want to look in TestUtilities
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.TreeSet;
+
+/*
+    Builds a populated database at every version we have a migration from, upgrades it with
+    WeatherDbHelper, and checks that the forecasts survive and the schema ends up the same as a
+    freshly created one.  The history is deliberately large so the logged timings show what an
+    app update would cost.
+ */
+public class TestDbUpgrade extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestDbUpgrade.class.getSimpleName();
+
+    private static final int LOCATIONS = 20;
+    private static final int DAYS_PER_LOCATION = 365;
+
+    // The schema as version 2 created it.  Never change these; they are what's on devices.
+    private static final String V2_CREATE_LOCATION_TABLE = "CREATE TABLE location (" +
+            "_id INTEGER PRIMARY KEY," +
+            "location_setting TEXT UNIQUE NOT NULL, " +
+            "city_name TEXT NOT NULL, " +
+            "coord_lat REAL NOT NULL, " +
+            "coord_long REAL NOT NULL );";
+
+    private static final String V2_CREATE_WEATHER_TABLE = "CREATE TABLE weather (" +
+            "_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "location_id INTEGER NOT NULL, " +
+            "date INTEGER NOT NULL, " +
+            "short_desc TEXT NOT NULL, " +
+            "weather_id INTEGER NOT NULL," +
+            "min REAL NOT NULL, " +
+            "max REAL NOT NULL, " +
+            "humidity REAL NOT NULL, " +
+            "pressure REAL NOT NULL, " +
+            "wind REAL NOT NULL, " +
+            "degrees REAL NOT NULL, " +
+            " FOREIGN KEY (location_id) REFERENCES location (_id), " +
+            " UNIQUE (date, location_id) ON CONFLICT REPLACE);";
+
+    void deleteTheDatabase() {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteTheDatabase();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteTheDatabase();
+        super.tearDown();
+    }
+
+    public void testUpgradeFromEveryMigratableVersion() {
+        SQLiteDatabase currentDb = new WeatherDbHelper(mContext).getWritableDatabase();
+        String currentSchema = describeSchema(currentDb);
+        currentDb.close();
+        deleteTheDatabase();
+
+        int oldestVersion = WeatherDbHelper.sMigrations[0].fromVersion;
+        for (int version = oldestVersion; version < WeatherDbHelper.DATABASE_VERSION; version++) {
+            createPopulatedDatabase(version);
+
+            long startMillis = SystemClock.elapsedRealtime();
+            SQLiteDatabase db = new WeatherDbHelper(mContext).getWritableDatabase();
+            long upgradeMillis = SystemClock.elapsedRealtime() - startMillis;
+            Log.d(LOG_TAG, "Upgraded version " + version + " with "
+                    + LOCATIONS * DAYS_PER_LOCATION + " weather rows in " + upgradeMillis + " ms");
+
+            assertEquals("Error: Upgrade from version " + version + " didn't reach the current version",
+                    WeatherDbHelper.DATABASE_VERSION, db.getVersion());
+            assertEquals("Error: Upgrade from version " + version + " lost locations",
+                    LOCATIONS, DatabaseUtils.queryNumEntries(db, LocationEntry.TABLE_NAME));
+            assertEquals("Error: Upgrade from version " + version + " lost weather",
+                    LOCATIONS * DAYS_PER_LOCATION,
+                    DatabaseUtils.queryNumEntries(db, WeatherEntry.TABLE_NAME));
+            assertEquals("Error: Upgrade from version " + version + " doesn't match onCreate",
+                    currentSchema, describeSchema(db));
+            db.close();
+            deleteTheDatabase();
+        }
+    }
+
+    // Versions we can't migrate from should still open, as an empty database.
+    public void testUpgradeFromUnknownVersionRecreates() {
+        int version = WeatherDbHelper.sMigrations[0].fromVersion;
+        createPopulatedDatabase(version);
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(
+                mContext.getDatabasePath(WeatherDbHelper.DATABASE_NAME).getPath(), null,
+                SQLiteDatabase.OPEN_READWRITE);
+        db.setVersion(version - 1);
+        db.close();
+
+        db = new WeatherDbHelper(mContext).getWritableDatabase();
+        assertEquals(0, DatabaseUtils.queryNumEntries(db, WeatherEntry.TABLE_NAME));
+        db.close();
+    }
+
+    /*
+        Creates the version 2 schema and runs the migrations up to the requested version, then
+        fills it with LOCATIONS * DAYS_PER_LOCATION weather rows.
+     */
+    private void createPopulatedDatabase(int version) {
+        mContext.getDatabasePath(WeatherDbHelper.DATABASE_NAME).getParentFile().mkdirs();
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(
+                mContext.getDatabasePath(WeatherDbHelper.DATABASE_NAME), null);
+        db.execSQL(V2_CREATE_LOCATION_TABLE);
+        db.execSQL(V2_CREATE_WEATHER_TABLE);
+        for (int from = 2; from < version; from++) {
+            WeatherDbHelper.getMigration(from).migrate(db);
+        }
+
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < LOCATIONS; i++) {
+                ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+                locationValues.put(LocationEntry.COLUMN_LOCATION_SETTING,
+                        TestUtilities.TEST_LOCATION + "-" + i);
+                long locationRowId = db.insert(LocationEntry.TABLE_NAME, null, locationValues);
+                assertTrue("Error: Failure to insert location " + i, locationRowId != -1);
+
+                for (int day = 0; day < DAYS_PER_LOCATION; day++) {
+                    ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+                    weatherValues.put(WeatherEntry.COLUMN_DATE,
+                            TestUtilities.TEST_DATE + day * DateUtils.DAY_IN_MILLIS);
+                    db.insert(WeatherEntry.TABLE_NAME, null, weatherValues);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        db.setVersion(version);
+        db.close();
+    }
+
+    // The tables and indexes in the database, and the columns of each table.
+    private static String describeSchema(SQLiteDatabase db) {
+        TreeSet<String> schema = new TreeSet<String>();
+        Cursor c = db.rawQuery("SELECT type, name FROM sqlite_master" +
+                " WHERE type IN ('table', 'index') AND name NOT LIKE 'sqlite_%'" +
+                " AND name != 'android_metadata'", null);
+        while (c.moveToNext()) {
+            String type = c.getString(0);
+            String name = c.getString(1);
+            schema.add(type + " " + name);
+            if ("table".equals(type)) {
+                Cursor columns = db.rawQuery("PRAGMA table_info(" + name + ")", null);
+                while (columns.moveToNext()) {
+                    schema.add("column " + name + "." + columns.getString(columns.getColumnIndex("name"))
+                            + " " + columns.getString(columns.getColumnIndex("type")));
+                }
+                columns.close();
+            }
+        }
+        c.close();
+        return schema.toString();
+    }
+}
@@ -24,12 +24,18 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Bundle;
 import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
 import android.util.Log;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
 /*
     Note: This is not a complete set of tests of the Sunshine ContentProvider, but it does test
     that at least the basic functionality has been implemented correctly.
@@ -512,4 +518,188 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    // Upserting the same forecast twice should leave the rows (and their ids) alone, and
+    // changing a single day should update just that row in place.
+    public void testUpsertWeather() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        ArrayList<ContentValues> values = new ArrayList<ContentValues>(
+                Arrays.asList(createBulkInsertWeatherValues(locationRowId)));
+
+        Bundle counts = upsertWeather(values);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, counts.getInt(WeatherEntry.EXTRA_INSERTED_COUNT));
+        assertEquals(0, counts.getInt(WeatherEntry.EXTRA_UPDATED_COUNT));
+        assertEquals(0, counts.getInt(WeatherEntry.EXTRA_UNCHANGED_COUNT));
+        long[] changedLocationIds = counts.getLongArray(WeatherEntry.EXTRA_CHANGED_LOCATION_IDS);
+        assertEquals(1, changedLocationIds.length);
+        assertEquals(locationRowId, changedLocationIds[0]);
+
+        long[] idsBefore = getWeatherIds();
+
+        counts = upsertWeather(values);
+        assertEquals(0, counts.getInt(WeatherEntry.EXTRA_INSERTED_COUNT));
+        assertEquals(0, counts.getInt(WeatherEntry.EXTRA_UPDATED_COUNT));
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, counts.getInt(WeatherEntry.EXTRA_UNCHANGED_COUNT));
+        assertEquals(0, counts.getLongArray(WeatherEntry.EXTRA_CHANGED_LOCATION_IDS).length);
+
+        values.get(3).put(WeatherEntry.COLUMN_MAX_TEMP, 100);
+        counts = upsertWeather(values);
+        assertEquals(0, counts.getInt(WeatherEntry.EXTRA_INSERTED_COUNT));
+        assertEquals(1, counts.getInt(WeatherEntry.EXTRA_UPDATED_COUNT));
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT - 1,
+                counts.getInt(WeatherEntry.EXTRA_UNCHANGED_COUNT));
+
+        assertTrue("Error: Upsert changed the row ids", Arrays.equals(idsBefore, getWeatherIds()));
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.moveToFirst();
+        for ( int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext() ) {
+            TestUtilities.validateCurrentRecord("testUpsertWeather.  Error validating WeatherEntry " + i,
+                    cursor, values.get(i));
+        }
+        cursor.close();
+    }
+
+    // A change to a single day should be announced on that day's uri, changes to several days
+    // on the location's uri, and nothing should be announced twice.
+    public void testChangeNotificationUris() {
+        final String locationSetting = TestUtilities.TEST_LOCATION;
+        final long date = TestUtilities.TEST_DATE;
+        HashMap<Long, String> locationSettings = new HashMap<Long, String>();
+        locationSettings.put(1L, locationSetting);
+
+        ChangeNotificationBatch batch = new ChangeNotificationBatch();
+        batch.addWeatherChange(1L, date);
+        batch.addWeatherChange(1L, date);
+        assertEquals(Arrays.asList(WeatherEntry.buildWeatherLocationWithDate(locationSetting, date)),
+                batch.buildUris(locationSettings));
+
+        batch.addWeatherChange(1L, date + DateUtils.DAY_IN_MILLIS);
+        batch.addUri(WeatherEntry.buildWeatherLocationWithDate(locationSetting, date));
+        assertEquals(Arrays.asList(WeatherEntry.buildWeatherLocation(locationSetting)),
+                batch.buildUris(locationSettings));
+
+        // A location we can't resolve falls back to the whole table, which covers everything.
+        batch.addWeatherChange(2L, date);
+        assertEquals(Arrays.asList(WeatherEntry.CONTENT_URI), batch.buildUris(locationSettings));
+    }
+
+    // Upserting with a delete-through date should prune the old rows in the same call.
+    public void testUpsertDeletesOldWeather() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        ContentValues[] bulkValues = createBulkInsertWeatherValues(locationRowId);
+        ArrayList<ContentValues> values = new ArrayList<ContentValues>(Arrays.asList(bulkValues));
+        upsertWeather(values);
+
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION), true, weatherObserver);
+
+        Bundle args = new Bundle();
+        args.putParcelableArrayList(WeatherEntry.EXTRA_VALUES, values);
+        args.putLong(WeatherEntry.EXTRA_DELETE_THROUGH_DATE,
+                bulkValues[1].getAsLong(WeatherEntry.COLUMN_DATE));
+        Bundle counts = mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                WeatherEntry.METHOD_UPSERT, null, args);
+        assertEquals(2, counts.getInt(WeatherEntry.EXTRA_DELETED_COUNT));
+
+        weatherObserver.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(weatherObserver);
+
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT - 2, getWeatherIds().length);
+    }
+
+    // The snapshot cache should hand out the same snapshot until the provider changes one of
+    // its rows, and then read the new values.
+    public void testForecastSnapshotInvalidation() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+        weatherValues.put(WeatherEntry.COLUMN_DATE, System.currentTimeMillis());
+        ArrayList<ContentValues> values = new ArrayList<ContentValues>();
+        values.add(weatherValues);
+        upsertWeather(values);
+
+        ForecastSnapshotCache.Snapshot snapshot =
+                ForecastSnapshotCache.get(mContext, TestUtilities.TEST_LOCATION);
+        assertEquals(1, snapshot.days.size());
+        assertSame("Error: Snapshot was read again without a change",
+                snapshot, ForecastSnapshotCache.get(mContext, TestUtilities.TEST_LOCATION));
+
+        weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, 100);
+        upsertWeather(values);
+        ForecastSnapshotCache.Snapshot changed =
+                ForecastSnapshotCache.get(mContext, TestUtilities.TEST_LOCATION);
+        assertNotSame("Error: Snapshot wasn't invalidated by the change", snapshot, changed);
+        assertEquals(100.0, changed.getFirstDay().high);
+    }
+
+    // Adding the same location twice should return the same row, and the provider's location
+    // cache must not outlive the row being deleted.
+    public void testAddLocation() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        long locationRowId = addLocation(testValues);
+        assertTrue(locationRowId != -1);
+        assertEquals("Error: Adding an existing location created a new row",
+                locationRowId, addLocation(testValues));
+
+        Cursor cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals(1, cursor.getCount());
+        cursor.close();
+
+        deleteAllRecordsFromProvider();
+        long newLocationRowId = addLocation(testValues);
+        TestUtilities.validateCursor("testAddLocation.  Error validating re-added LocationEntry.",
+                mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                        null, LocationEntry._ID + " = ?",
+                        new String[]{Long.toString(newLocationRowId)}, null),
+                testValues);
+    }
+
+    private long addLocation(ContentValues values) {
+        Bundle args = new Bundle();
+        args.putParcelable(LocationEntry.EXTRA_VALUES, values);
+        return mContext.getContentResolver().call(LocationEntry.CONTENT_URI,
+                LocationEntry.METHOD_ADD_LOCATION, null, args)
+                .getLong(LocationEntry.EXTRA_LOCATION_ID);
+    }
+
+    private Bundle upsertWeather(ArrayList<ContentValues> values) {
+        Bundle args = new Bundle();
+        args.putParcelableArrayList(WeatherEntry.EXTRA_VALUES, values);
+        return mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                WeatherEntry.METHOD_UPSERT, null, args);
+    }
+
+    private long[] getWeatherIds() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry._ID},
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        long[] ids = new long[cursor.getCount()];
+        for (int i = 0; cursor.moveToNext(); i++) {
+            ids[i] = cursor.getLong(0);
+        }
+        cursor.close();
+        return ids;
+    }
 }
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Runs EXPLAIN QUERY PLAN over each of the statements WeatherProvider runs against a known
+    location or date, and fails if SQLite would answer any of them by scanning a whole table.
+    If one of these fails after a schema or query change, an index is missing or no longer
+    usable for that access path.
+ */
+public class TestQueryPlans extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestQueryPlans.class.getSimpleName();
+
+    private static final String[] FORECAST_COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    private static final String SORT_ORDER = WeatherEntry.COLUMN_DATE + " ASC";
+
+    private SQLiteDatabase mDb;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDb = new WeatherDbHelper(mContext).getReadableDatabase();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDb.close();
+        super.tearDown();
+    }
+
+    // "weather/*"
+    public void testWeatherWithLocationPlan() {
+        assertNoFullScan(WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(
+                        FORECAST_COLUMNS, WeatherProvider.sLocationSettingSelection,
+                        null, null, SORT_ORDER, null),
+                TestUtilities.TEST_LOCATION);
+    }
+
+    // "weather/*?date=#"
+    public void testWeatherWithLocationAndStartDatePlan() {
+        assertNoFullScan(WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(
+                        FORECAST_COLUMNS, WeatherProvider.sLocationSettingWithStartDateSelection,
+                        null, null, SORT_ORDER, null),
+                TestUtilities.TEST_LOCATION, Long.toString(TestUtilities.TEST_DATE));
+    }
+
+    // "weather/*/#"
+    public void testWeatherWithLocationAndDatePlan() {
+        assertNoFullScan(WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(
+                        FORECAST_COLUMNS, WeatherProvider.sLocationSettingAndDaySelection,
+                        null, null, null, null),
+                TestUtilities.TEST_LOCATION, Long.toString(TestUtilities.TEST_DATE));
+    }
+
+    // "location" queried by setting, as the provider does when a location to add already exists
+    public void testLocationBySettingPlan() {
+        assertNoFullScan("SELECT " + LocationEntry._ID + " FROM " + LocationEntry.TABLE_NAME +
+                        " WHERE " + LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                TestUtilities.TEST_LOCATION);
+    }
+
+    // The in-place update the weather upsert tries first for every row
+    public void testWeatherUpsertPlan() {
+        assertNoFullScan(WeatherProvider.sWeatherUpdateIfChangedSql,
+                "1", Long.toString(TestUtilities.TEST_DATE), "Asteroids", "321",
+                "65", "75", "1.2", "1.3", "5.5", "1.1");
+    }
+
+    // The pruning of old days, and the lookup of whose days are about to be pruned
+    public void testDeleteThroughDatePlans() {
+        String date = Long.toString(TestUtilities.TEST_DATE);
+        assertNoFullScan("DELETE FROM " + WeatherEntry.TABLE_NAME +
+                " WHERE " + WeatherProvider.sDateThroughSelection, date);
+        assertNoFullScan("SELECT " + WeatherEntry.COLUMN_LOC_KEY +
+                " FROM " + WeatherEntry.TABLE_NAME +
+                " WHERE " + WeatherProvider.sDateThroughSelection, date);
+    }
+
+    private void assertNoFullScan(String sql, String... selectionArgs) {
+        Cursor c = mDb.rawQuery("EXPLAIN QUERY PLAN " + sql, selectionArgs);
+        try {
+            int detailIndex = c.getColumnIndex("detail");
+            assertTrue("Error: No query plan for " + sql, c.moveToFirst());
+            do {
+                String detail = c.getString(detailIndex);
+                Log.d(LOG_TAG, sql + " -> " + detail);
+                // A plan step that reads a table or index from start to end is reported as
+                // "SCAN ..."; one that uses an index to find its rows as "SEARCH ...".
+                assertFalse("Error: Full scan (" + detail + ") in the plan for " + sql,
+                        detail.startsWith("SCAN"));
+            } while (c.moveToNext());
+        } finally {
+            c.close();
+        }
+    }
+}
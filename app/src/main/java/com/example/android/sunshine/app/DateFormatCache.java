@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.text.format.DateUtils;
+import android.text.format.Time;
+import android.util.SparseArray;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+/**
+ * The date strings Utility formats for the forecast list, the detail view, the widgets and the
+ * notification, remembered per julian day.  The formatters are built once and the results are
+ * kept until the day rolls over, or the locale, time zone or clock changes, so formatting a day
+ * we've already shown today doesn't allocate at all.  Everything is guarded by the class, since
+ * the loaders, widgets and sync adapter all call in from their own threads.
+ */
+class DateFormatCache {
+
+    private static final int KIND_FRIENDLY = 0;
+    private static final int KIND_FRIENDLY_LONG_TODAY = 1;
+    private static final int KIND_FULL_FRIENDLY = 2;
+    private static final int KIND_DAY_NAME = 3;
+    private static final int KIND_MONTH_DAY = 4;
+    private static final int KIND_DATE = 5;
+    private static final int KIND_COUNT = 6;
+
+    private static boolean sReceiverRegistered;
+
+    // Today, in the time zone and locale the cache was filled for.
+    private static Locale sLocale;
+    private static long sGmtoffSeconds;
+    private static int sCurrentJulianDay;
+    private static long sDayStartMillis;
+    private static long sDayEndMillis;
+
+    private static SimpleDateFormat sShortenedDateFormat;
+    private static SimpleDateFormat sDayFormat;
+    private static SimpleDateFormat sMonthDayFormat;
+    private static DateFormat sDateFormat;
+
+    // Per kind, julian day -> formatted string
+    @SuppressWarnings("unchecked")
+    private static final SparseArray<String>[] sResults = new SparseArray[KIND_COUNT];
+    static {
+        for (int i = 0; i < KIND_COUNT; i++) {
+            sResults[i] = new SparseArray<String>();
+        }
+    }
+
+    private static int sHits;
+    private static int sMisses;
+
+    private static final BroadcastReceiver sInvalidator = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            invalidate();
+        }
+    };
+
+    private DateFormatCache() {
+    }
+
+    static synchronized String getFriendlyDayString(Context context, long dateInMillis, boolean displayLongToday) {
+        int julianDay = refresh(context, dateInMillis);
+        // Only today's string depends on displayLongToday.
+        int kind = displayLongToday && julianDay == sCurrentJulianDay ? KIND_FRIENDLY_LONG_TODAY : KIND_FRIENDLY;
+        String result = sResults[kind].get(julianDay);
+        if (result != null) {
+            sHits++;
+            return result;
+        }
+        sMisses++;
+
+        // The day string for forecast uses the following logic:
+        // For today: "Today, June 8"
+        // For tomorrow:  "Tomorrow"
+        // For the next 5 days: "Wednesday" (just the day name)
+        // For all days after that: "Mon Jun 8"
+        if (kind == KIND_FRIENDLY_LONG_TODAY) {
+            result = context.getString(R.string.format_full_friendly_date,
+                    context.getString(R.string.today), getFormattedMonthDay(context, dateInMillis));
+        } else if ( julianDay < sCurrentJulianDay + 7 ) {
+            // If the input date is less than a week in the future, just return the day name.
+            result = getDayName(context, dateInMillis);
+        } else {
+            // Otherwise, use the form "Mon Jun 3"
+            result = sShortenedDateFormat.format(dateInMillis);
+        }
+        sResults[kind].put(julianDay, result);
+        return result;
+    }
+
+    static synchronized String getFullFriendlyDayString(Context context, long dateInMillis) {
+        int julianDay = refresh(context, dateInMillis);
+        String result = sResults[KIND_FULL_FRIENDLY].get(julianDay);
+        if (result != null) {
+            sHits++;
+            return result;
+        }
+        sMisses++;
+        result = context.getString(R.string.format_full_friendly_date,
+                getDayName(context, dateInMillis), getFormattedMonthDay(context, dateInMillis));
+        sResults[KIND_FULL_FRIENDLY].put(julianDay, result);
+        return result;
+    }
+
+    static synchronized String getDayName(Context context, long dateInMillis) {
+        int julianDay = refresh(context, dateInMillis);
+        String result = sResults[KIND_DAY_NAME].get(julianDay);
+        if (result != null) {
+            sHits++;
+            return result;
+        }
+        sMisses++;
+        if (julianDay == sCurrentJulianDay) {
+            result = context.getString(R.string.today);
+        } else if ( julianDay == sCurrentJulianDay + 1 ) {
+            result = context.getString(R.string.tomorrow);
+        } else {
+            // Otherwise, the format is just the day of the week (e.g "Wednesday").
+            result = sDayFormat.format(dateInMillis);
+        }
+        sResults[KIND_DAY_NAME].put(julianDay, result);
+        return result;
+    }
+
+    static synchronized String getFormattedMonthDay(Context context, long dateInMillis) {
+        int julianDay = refresh(context, dateInMillis);
+        String result = sResults[KIND_MONTH_DAY].get(julianDay);
+        if (result != null) {
+            sHits++;
+            return result;
+        }
+        sMisses++;
+        result = sMonthDayFormat.format(dateInMillis);
+        sResults[KIND_MONTH_DAY].put(julianDay, result);
+        return result;
+    }
+
+    static synchronized String formatDate(long dateInMillis) {
+        int julianDay = refresh(null, dateInMillis);
+        String result = sResults[KIND_DATE].get(julianDay);
+        if (result != null) {
+            sHits++;
+            return result;
+        }
+        sMisses++;
+        result = sDateFormat.format(dateInMillis);
+        sResults[KIND_DATE].put(julianDay, result);
+        return result;
+    }
+
+    /**
+     * Forgets everything, so the next call rebuilds the formatters for the current locale and
+     * time zone.
+     */
+    static synchronized void invalidate() {
+        sLocale = null;
+    }
+
+    static synchronized int getHitCount() {
+        return sHits;
+    }
+
+    static synchronized int getMissCount() {
+        return sMisses;
+    }
+
+    /**
+     * Makes sure the cache is for today, in the current locale and time zone.  Must be called
+     * with the class held.
+     *
+     * @param context used to listen for time zone and clock changes; until a caller passes one
+     *                in, only locale changes and the end of the day are noticed
+     *
+     * @return the julian day dateInMillis falls on, by today's offset from GMT
+     */
+    private static int refresh(Context context, long dateInMillis) {
+        long now = System.currentTimeMillis();
+        if (sLocale == null || sLocale != Locale.getDefault()
+                || now < sDayStartMillis || now >= sDayEndMillis) {
+            rebuild(context, now);
+        }
+        return Time.getJulianDay(dateInMillis, sGmtoffSeconds);
+    }
+
+    private static void rebuild(Context context, long now) {
+        if (!sReceiverRegistered && context != null) {
+            // Time zone and clock changes can't be seen from here, so they have to be told to us.
+            IntentFilter filter = new IntentFilter();
+            filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+            filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+            filter.addAction(Intent.ACTION_TIME_CHANGED);
+            context.getApplicationContext().registerReceiver(sInvalidator, filter);
+            sReceiverRegistered = true;
+        }
+
+        Time time = new Time();
+        time.set(now);
+        sLocale = Locale.getDefault();
+        sGmtoffSeconds = time.gmtoff;
+        sCurrentJulianDay = Time.getJulianDay(now, sGmtoffSeconds);
+        sDayStartMillis = (sCurrentJulianDay - Time.EPOCH_JULIAN_DAY) * DateUtils.DAY_IN_MILLIS
+                - sGmtoffSeconds * 1000;
+        sDayEndMillis = sDayStartMillis + DateUtils.DAY_IN_MILLIS;
+
+        sShortenedDateFormat = new SimpleDateFormat("EEE MMM dd");
+        sDayFormat = new SimpleDateFormat("EEEE");
+        sMonthDayFormat = new SimpleDateFormat("MMMM dd");
+        sDateFormat = DateFormat.getDateInstance();
+
+        for (SparseArray<String> results : sResults) {
+            results.clear();
+        }
+    }
+}
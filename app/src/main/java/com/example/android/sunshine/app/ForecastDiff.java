@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The changes that turn one forecast list into another, as RecyclerView range notifications.
+ * Rows are matched by date, which both lists are sorted by, and a matched row only counts as
+ * changed when its content hash differs, so a sync that changes one day rebinds only that row.
+ */
+public final class ForecastDiff {
+    private static final int INSERT = 0;
+    private static final int REMOVE = 1;
+    private static final int CHANGE = 2;
+
+    private static final class Op {
+        final int type;
+        final int position;
+        int count = 1;
+
+        Op(int type, int position) {
+            this.type = type;
+            this.position = position;
+        }
+    }
+
+    private final List<Op> mOps;
+
+    private ForecastDiff(List<Op> ops) {
+        mOps = ops;
+    }
+
+    /**
+     * Diffs two lists of rows, each sorted by date.  Cheap enough for the loader's background
+     * thread, as it's a single pass over both.
+     */
+    public static ForecastDiff compute(List<ForecastItem> oldItems, List<ForecastItem> newItems) {
+        ArrayList<Op> ops = new ArrayList<Op>();
+        int oldIndex = 0;
+        int newIndex = 0;
+        // Where the next change lands in the list as it stands after the changes before it.
+        int position = 0;
+
+        while (oldIndex < oldItems.size() || newIndex < newItems.size()) {
+            ForecastItem oldItem = oldIndex < oldItems.size() ? oldItems.get(oldIndex) : null;
+            ForecastItem newItem = newIndex < newItems.size() ? newItems.get(newIndex) : null;
+
+            if (newItem == null || (oldItem != null && oldItem.date < newItem.date)) {
+                add(ops, REMOVE, position);
+                oldIndex++;
+            } else if (oldItem == null || newItem.date < oldItem.date) {
+                add(ops, INSERT, position);
+                newIndex++;
+                position++;
+            } else {
+                if (!oldItem.hasSameContent(newItem)) {
+                    add(ops, CHANGE, position);
+                }
+                oldIndex++;
+                newIndex++;
+                position++;
+            }
+        }
+        return new ForecastDiff(Collections.unmodifiableList(ops));
+    }
+
+    // Extends the last op if this one continues its range.
+    private static void add(List<Op> ops, int type, int position) {
+        if (!ops.isEmpty()) {
+            Op last = ops.get(ops.size() - 1);
+            if (last.type == type) {
+                if ((type == REMOVE && last.position == position)
+                        || (type != REMOVE && last.position + last.count == position)) {
+                    last.count++;
+                    return;
+                }
+            }
+        }
+        ops.add(new Op(type, position));
+    }
+
+    public boolean isEmpty() {
+        return mOps.isEmpty();
+    }
+
+    /**
+     * Sends the changes to the adapter, which must already be showing the new list.
+     */
+    public void dispatchTo(RecyclerView.Adapter adapter) {
+        for (Op op : mOps) {
+            switch (op.type) {
+                case INSERT:
+                    adapter.notifyItemRangeInserted(op.position, op.count);
+                    break;
+                case REMOVE:
+                    adapter.notifyItemRangeRemoved(op.position, op.count);
+                    break;
+                default:
+                    adapter.notifyItemRangeChanged(op.position, op.count);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Op op : mOps) {
+            if (builder.length() > 0) {
+                builder.append(", ");
+            }
+            builder.append(op.type == INSERT ? "insert " : op.type == REMOVE ? "remove " : "change ")
+                    .append(op.position).append('+').append(op.count);
+        }
+        return builder.length() > 0 ? builder.toString() : "no changes";
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One row of the forecast list, with every string it shows already formatted, so binding it
+ * only has to set text.  Built from the forecast cursor off the UI thread by ForecastLoader.
+ */
+public final class ForecastItem {
+    public final long id;
+    public final long date;
+    public final int weatherId;
+
+    // The date as the first row of the "today" layout shows it, and as every other row does.
+    public final String longDateText;
+    public final String dateText;
+
+    public final String description;
+    public final String descriptionA11y;
+    public final String highText;
+    public final String highA11y;
+    public final String lowText;
+    public final String lowA11y;
+
+    public final int iconResource;
+    public final int artResource;
+    // Null when we're using our own graphics.
+    public final String artUrl;
+
+    // Over everything a row shows, so ForecastDiff can tell which rows need rebinding.
+    public final int contentHash;
+
+    private ForecastItem(Context context, Cursor cursor, boolean localGraphics) {
+        id = cursor.getLong(ForecastFragment.COL_WEATHER_ID);
+        date = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+
+        longDateText = Utility.getFriendlyDayString(context, date, true);
+        dateText = Utility.getFriendlyDayString(context, date, false);
+
+        description = Utility.getStringForWeatherCondition(context, weatherId);
+        descriptionA11y = context.getString(R.string.a11y_forecast, description);
+        highText = Utility.formatTemperature(context, cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP));
+        highA11y = context.getString(R.string.a11y_high_temp, highText);
+        lowText = Utility.formatTemperature(context, cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP));
+        lowA11y = context.getString(R.string.a11y_low_temp, lowText);
+
+        iconResource = Utility.getIconResourceForWeatherCondition(weatherId);
+        artResource = Utility.getArtResourceForWeatherCondition(weatherId);
+        artUrl = localGraphics ? null : Utility.getArtUrlForWeatherCondition(context, weatherId);
+
+        contentHash = Arrays.hashCode(new Object[] { longDateText, dateText, description,
+                highText, lowText, iconResource, artResource, artUrl });
+    }
+
+    /**
+     * @return true if a row bound to this item would look the same bound to {@code other}.
+     */
+    public boolean hasSameContent(ForecastItem other) {
+        return contentHash == other.contentHash
+                && longDateText.equals(other.longDateText)
+                && dateText.equals(other.dateText)
+                && description.equals(other.description)
+                && highText.equals(other.highText)
+                && lowText.equals(other.lowText)
+                && iconResource == other.iconResource
+                && artResource == other.artResource
+                && (artUrl == null ? other.artUrl == null : artUrl.equals(other.artUrl));
+    }
+
+    /**
+     * Builds a row for every row of a cursor with ForecastFragment.FORECAST_COLUMNS.  Leaves the
+     * cursor's position wherever the last row was.
+     */
+    public static List<ForecastItem> fromCursor(Context context, Cursor cursor) {
+        if (cursor == null || !cursor.moveToFirst()) {
+            return Collections.emptyList();
+        }
+        boolean localGraphics = Utility.usingLocalGraphics(context);
+        ArrayList<ForecastItem> items = new ArrayList<ForecastItem>(cursor.getCount());
+        do {
+            items.add(new ForecastItem(context, cursor, localGraphics));
+        } while (cursor.moveToNext());
+        return Collections.unmodifiableList(items);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.support.v4.content.CursorLoader;
+import android.util.Log;
+
+import java.util.List;
+
+/**
+ * A CursorLoader that also turns the forecast into ForecastItems on its background thread, so
+ * the adapter never formats anything while the list scrolls, and diffs them against the rows it
+ * delivered last time, so the adapter only has to notify what changed.  The cursor it delivers
+ * is still the query's, for anyone who wants the raw columns.
+ */
+public class ForecastLoader extends CursorLoader {
+    private static final String LOG_TAG = ForecastLoader.class.getSimpleName();
+
+    /**
+     * The loaded cursor, with the rows already built from it.
+     */
+    public static class ForecastCursor extends CursorWrapper {
+        private final List<ForecastItem> mItems;
+        private final List<ForecastItem> mPreviousItems;
+        private final ForecastDiff mDiff;
+
+        ForecastCursor(Cursor cursor, List<ForecastItem> items,
+                       List<ForecastItem> previousItems, ForecastDiff diff) {
+            super(cursor);
+            mItems = items;
+            mPreviousItems = previousItems;
+            mDiff = diff;
+        }
+
+        public List<ForecastItem> getItems() {
+            return mItems;
+        }
+
+        /**
+         * @return the rows the diff was computed from, or null if there's no diff.
+         */
+        public List<ForecastItem> getPreviousItems() {
+            return mPreviousItems;
+        }
+
+        public ForecastDiff getDiff() {
+            return mDiff;
+        }
+    }
+
+    // The rows of the last cursor delivered, which the next load is diffed against.
+    private volatile List<ForecastItem> mDeliveredItems;
+
+    public ForecastLoader(Context context, Uri uri, String[] projection, String selection,
+                          String[] selectionArgs, String sortOrder) {
+        super(context, uri, projection, selection, selectionArgs, sortOrder);
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        Cursor cursor = super.loadInBackground();
+        if (cursor == null) {
+            return null;
+        }
+        long start = SystemClock.elapsedRealtime();
+        List<ForecastItem> items = ForecastItem.fromCursor(getContext(), cursor);
+        List<ForecastItem> previousItems = mDeliveredItems;
+        ForecastDiff diff = previousItems != null ? ForecastDiff.compute(previousItems, items) : null;
+        Log.d(LOG_TAG, "Built " + items.size() + " forecast rows in "
+                + (SystemClock.elapsedRealtime() - start) + " ms: "
+                + (diff != null ? diff : "no previous rows"));
+        return new ForecastCursor(cursor, items, previousItems, diff);
+    }
+
+    @Override
+    public void deliverResult(Cursor cursor) {
+        if (!isReset()) {
+            mDeliveredItems = cursor instanceof ForecastCursor
+                    ? ((ForecastCursor) cursor).getItems() : null;
+        }
+        super.deliverResult(cursor);
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        mDeliveredItems = null;
+    }
+}
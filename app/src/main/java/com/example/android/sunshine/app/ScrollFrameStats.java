@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.Choreographer;
+
+/**
+ * Times the frames drawn while a RecyclerView scrolls, in debug builds only.  When a scroll
+ * settles it logs how many frames there were, how many took longer than a 60 fps frame, and the
+ * slowest, so scrolling through the forecast doubles as a benchmark.
+ */
+public class ScrollFrameStats extends RecyclerView.OnScrollListener implements Choreographer.FrameCallback {
+    private static final String LOG_TAG = ScrollFrameStats.class.getSimpleName();
+
+    private static final long FRAME_INTERVAL_NANOS = 1000000000L / 60;
+
+    private final String mName;
+    private final boolean mEnabled = BuildConfig.DEBUG;
+
+    private boolean mRunning;
+    private long mLastFrameNanos;
+    private int mFrameCount;
+    private int mJankCount;
+    private long mWorstFrameNanos;
+    private long mTotalNanos;
+
+    public ScrollFrameStats(String name) {
+        mName = name;
+    }
+
+    @Override
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        if (!mEnabled) {
+            return;
+        }
+        if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+            stop();
+        } else {
+            start();
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!mRunning) {
+            return;
+        }
+        if (mLastFrameNanos != 0) {
+            long frameNanos = frameTimeNanos - mLastFrameNanos;
+            mFrameCount++;
+            mTotalNanos += frameNanos;
+            mWorstFrameNanos = Math.max(mWorstFrameNanos, frameNanos);
+            // Allow a little slack for vsync jitter.
+            if (frameNanos > FRAME_INTERVAL_NANOS * 3 / 2) {
+                mJankCount++;
+            }
+        }
+        mLastFrameNanos = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    private void start() {
+        if (mRunning) {
+            return;
+        }
+        mRunning = true;
+        mLastFrameNanos = 0;
+        mFrameCount = 0;
+        mJankCount = 0;
+        mWorstFrameNanos = 0;
+        mTotalNanos = 0;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    private void stop() {
+        if (!mRunning) {
+            return;
+        }
+        mRunning = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+        if (mFrameCount > 0) {
+            Log.d(LOG_TAG, mName + ": " + mFrameCount + " frames, " + mJankCount + " janky, average "
+                    + (mTotalNanos / mFrameCount / 1000) + " us, worst "
+                    + (mWorstFrameNanos / 1000) + " us");
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The settings the rest of the app reads all the time, kept in memory.  Adapter binds, widget
+ * loops and the sync adapter read these fields instead of going to SharedPreferences and
+ * resolving the key strings on every call.  A listener on the default preferences reloads them
+ * whenever one of their keys changes, whoever changed it.  The location status and last sync
+ * time are written through here with apply(), so the field changes straight away and the sync
+ * thread never waits on the disk.
+ */
+public class SunshinePreferences implements SharedPreferences.OnSharedPreferenceChangeListener {
+
+    private static SunshinePreferences sInstance;
+
+    private final SharedPreferences mPrefs;
+
+    private final String mLocationKey;
+    private final String mLocationDefault;
+    private final String mTrackedLocationsKey;
+    private final String mLatitudeKey;
+    private final String mLongitudeKey;
+    private final String mUnitsKey;
+    private final String mUnitsMetric;
+    private final String mArtPackKey;
+    private final String mArtPackSunshine;
+    private final String mLocationStatusKey;
+    private final String mLastSyncKey;
+    private final Set<String> mKeys;
+
+    private volatile String mPreferredLocation;
+    private volatile Set<String> mTrackedLocations;
+    private volatile boolean mLatLonAvailable;
+    private volatile float mLatitude;
+    private volatile float mLongitude;
+    private volatile boolean mMetric;
+    private volatile String mArtPack;
+    private volatile boolean mLocalGraphics;
+    private volatile int mLocationStatus;
+    private volatile long mLastSyncMillis;
+
+    public static synchronized SunshinePreferences get(Context context) {
+        if (sInstance == null) {
+            sInstance = new SunshinePreferences(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private SunshinePreferences(Context context) {
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+
+        mLocationKey = context.getString(R.string.pref_location_key);
+        mLocationDefault = context.getString(R.string.pref_location_default);
+        mTrackedLocationsKey = context.getString(R.string.pref_tracked_locations_key);
+        mLatitudeKey = context.getString(R.string.pref_location_latitude);
+        mLongitudeKey = context.getString(R.string.pref_location_longitude);
+        mUnitsKey = context.getString(R.string.pref_units_key);
+        mUnitsMetric = context.getString(R.string.pref_units_metric);
+        mArtPackKey = context.getString(R.string.pref_art_pack_key);
+        mArtPackSunshine = context.getString(R.string.pref_art_pack_sunshine);
+        mLocationStatusKey = context.getString(R.string.pref_location_status_key);
+        mLastSyncKey = context.getString(R.string.pref_last_sync);
+        mKeys = new HashSet<String>(Arrays.asList(mLocationKey, mTrackedLocationsKey, mLatitudeKey,
+                mLongitudeKey, mUnitsKey, mArtPackKey, mLocationStatusKey, mLastSyncKey));
+
+        load();
+        // SharedPreferences only holds on to its listeners weakly; sInstance keeps this one alive.
+        mPrefs.registerOnSharedPreferenceChangeListener(this);
+    }
+
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+        if (key == null || mKeys.contains(key)) {
+            load();
+        }
+    }
+
+    public String getPreferredLocation() {
+        return mPreferredLocation;
+    }
+
+    /**
+     * @return the locations, other than the preferred one, that should be kept in sync.
+     */
+    public Set<String> getTrackedLocations() {
+        return mTrackedLocations;
+    }
+
+    public boolean isLocationLatLonAvailable() {
+        return mLatLonAvailable;
+    }
+
+    public float getLocationLatitude() {
+        return mLatitude;
+    }
+
+    public float getLocationLongitude() {
+        return mLongitude;
+    }
+
+    public boolean isMetric() {
+        return mMetric;
+    }
+
+    /**
+     * @return the art pack's URL format, with a %s for the art's name.
+     */
+    public String getArtPack() {
+        return mArtPack;
+    }
+
+    public boolean usingLocalGraphics() {
+        return mLocalGraphics;
+    }
+
+    @SunshineSyncAdapter.LocationStatus
+    @SuppressWarnings("ResourceType")
+    public int getLocationStatus() {
+        return mLocationStatus;
+    }
+
+    public void setLocationStatus(@SunshineSyncAdapter.LocationStatus int locationStatus) {
+        mLocationStatus = locationStatus;
+        // apply() updates the in-memory preferences before it returns, so a reload triggered by
+        // any other key can't bring back the old value.
+        mPrefs.edit().putInt(mLocationStatusKey, locationStatus).apply();
+    }
+
+    /**
+     * @return when the preferred location's forecast was last fetched, or confirmed unchanged,
+     * or 0 if it never has been.
+     */
+    public long getLastSyncMillis() {
+        return mLastSyncMillis;
+    }
+
+    public void setLastSyncMillis(long lastSyncMillis) {
+        mLastSyncMillis = lastSyncMillis;
+        mPrefs.edit().putLong(mLastSyncKey, lastSyncMillis).apply();
+    }
+
+    private void load() {
+        mPreferredLocation = mPrefs.getString(mLocationKey, mLocationDefault);
+        // Written by the settings screen as one comma-separated string.
+        HashSet<String> tracked = new HashSet<String>();
+        for (String location : mPrefs.getString(mTrackedLocationsKey, "").split(",")) {
+            if (!location.trim().isEmpty()) {
+                tracked.add(location.trim());
+            }
+        }
+        mTrackedLocations = Collections.unmodifiableSet(tracked);
+        mLatLonAvailable = mPrefs.contains(mLatitudeKey) && mPrefs.contains(mLongitudeKey);
+        mLatitude = mPrefs.getFloat(mLatitudeKey, Utility.DEFAULT_LATLONG);
+        mLongitude = mPrefs.getFloat(mLongitudeKey, Utility.DEFAULT_LATLONG);
+        mMetric = mPrefs.getString(mUnitsKey, mUnitsMetric).equals(mUnitsMetric);
+        String artPack = mPrefs.getString(mArtPackKey, mArtPackSunshine);
+        // Keep the same instance while it's unchanged, so callers can compare by reference.
+        if (!artPack.equals(mArtPack)) {
+            mArtPack = artPack;
+        }
+        mLocalGraphics = mArtPack.equals(mArtPackSunshine);
+        mLocationStatus = mPrefs.getInt(mLocationStatusKey, SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN);
+        mLastSyncMillis = mPrefs.getLong(mLastSyncKey, 0);
+    }
+}
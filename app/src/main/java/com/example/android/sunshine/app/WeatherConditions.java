@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+
+import java.util.Locale;
+
+/**
+ * Everything Utility knows about an OpenWeatherMap condition code, in tables indexed by the
+ * code, so looking one up is an array read.  The art pack's URLs are formatted when the pack
+ * changes and the condition strings when the locale does, rather than on every call.
+ *
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ */
+class WeatherConditions {
+
+    // Condition codes run from 200 to 962.
+    private static final int MAX_WEATHER_ID = 999;
+
+    /**
+     * The art that goes with a group of conditions.
+     */
+    private static final class Art {
+        final String name;
+        final int iconResource;
+        final int artResource;
+        final String imageUrl;
+
+        Art(String name, int iconResource, int artResource, String imageUrl) {
+            this.name = name;
+            this.iconResource = iconResource;
+            this.artResource = artResource;
+            this.imageUrl = imageUrl;
+        }
+    }
+
+    private static final Art STORM = new Art("storm", R.drawable.ic_storm, R.drawable.art_storm,
+            "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg");
+    private static final Art LIGHT_RAIN = new Art("light_rain", R.drawable.ic_light_rain, R.drawable.art_light_rain,
+            "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg");
+    private static final Art RAIN = new Art("rain", R.drawable.ic_rain, R.drawable.art_rain,
+            "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg");
+    private static final Art SNOW = new Art("snow", R.drawable.ic_snow, R.drawable.art_snow,
+            "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG");
+    private static final Art FOG = new Art("fog", R.drawable.ic_fog, R.drawable.art_fog,
+            "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg");
+    // Storm art, with a photo of the dust ahead of one.
+    private static final Art TORNADO = new Art("storm", R.drawable.ic_storm, R.drawable.art_storm,
+            "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg");
+    private static final Art CLEAR = new Art("clear", R.drawable.ic_clear, R.drawable.art_clear,
+            "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg");
+    private static final Art LIGHT_CLOUDS = new Art("light_clouds", R.drawable.ic_light_clouds, R.drawable.art_light_clouds,
+            "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg");
+    private static final Art CLOUDS = new Art("clouds", R.drawable.ic_cloudy, R.drawable.art_clouds,
+            "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg");
+
+    // Where two ranges overlap, the earlier one wins.
+    private static final int[][] ART_RANGES = {
+            // first, last, index into ART_GROUPS
+            {200, 232, 0},
+            {300, 321, 1},
+            {500, 504, 2},
+            {511, 511, 3},
+            {520, 531, 2},
+            {600, 622, 3},
+            {701, 761, 4},
+            {781, 781, 5},
+            {800, 800, 6},
+            {801, 801, 7},
+            {802, 804, 8},
+    };
+    private static final Art[] ART_GROUPS = {
+            STORM, LIGHT_RAIN, RAIN, SNOW, FOG, TORNADO, CLEAR, LIGHT_CLOUDS, CLOUDS
+    };
+
+    private static final int[][] STRING_RANGES = {
+            // first, last, string
+            {200, 232, R.string.condition_2xx},
+            {300, 321, R.string.condition_3xx},
+            {500, 500, R.string.condition_500},
+            {501, 501, R.string.condition_501},
+            {502, 502, R.string.condition_502},
+            {503, 503, R.string.condition_503},
+            {504, 504, R.string.condition_504},
+            {511, 511, R.string.condition_511},
+            {520, 520, R.string.condition_520},
+            {531, 531, R.string.condition_531},
+            {600, 600, R.string.condition_600},
+            {601, 601, R.string.condition_601},
+            {602, 602, R.string.condition_602},
+            {611, 611, R.string.condition_611},
+            {612, 612, R.string.condition_612},
+            {615, 615, R.string.condition_615},
+            {616, 616, R.string.condition_616},
+            {620, 620, R.string.condition_620},
+            {621, 621, R.string.condition_621},
+            {622, 622, R.string.condition_622},
+            {701, 701, R.string.condition_701},
+            {711, 711, R.string.condition_711},
+            {721, 721, R.string.condition_721},
+            {731, 731, R.string.condition_731},
+            {741, 741, R.string.condition_741},
+            {751, 751, R.string.condition_751},
+            {761, 761, R.string.condition_761},
+            {762, 762, R.string.condition_762},
+            {771, 771, R.string.condition_771},
+            {781, 781, R.string.condition_781},
+            {800, 800, R.string.condition_800},
+            {801, 801, R.string.condition_801},
+            {802, 802, R.string.condition_802},
+            {803, 803, R.string.condition_803},
+            {804, 804, R.string.condition_804},
+            {900, 900, R.string.condition_900},
+            {901, 901, R.string.condition_901},
+            {902, 902, R.string.condition_902},
+            {903, 903, R.string.condition_903},
+            {904, 904, R.string.condition_904},
+            {905, 905, R.string.condition_905},
+            {906, 906, R.string.condition_906},
+            {951, 951, R.string.condition_951},
+            {952, 952, R.string.condition_952},
+            {953, 953, R.string.condition_953},
+            {954, 954, R.string.condition_954},
+            {955, 955, R.string.condition_955},
+            {956, 956, R.string.condition_956},
+            {957, 957, R.string.condition_957},
+            {958, 958, R.string.condition_958},
+            {959, 959, R.string.condition_959},
+            {960, 960, R.string.condition_960},
+            {961, 961, R.string.condition_961},
+            {962, 962, R.string.condition_962},
+    };
+
+    // weatherId -> art, or null if there's none
+    private static final Art[] sArt = new Art[MAX_WEATHER_ID + 1];
+    // weatherId -> string resource, or 0 if it's a condition we don't know
+    private static final int[] sStringIds = new int[MAX_WEATHER_ID + 1];
+
+    static {
+        for (int[] range : ART_RANGES) {
+            for (int id = range[0]; id <= range[1]; id++) {
+                if (sArt[id] == null) {
+                    sArt[id] = ART_GROUPS[range[2]];
+                }
+            }
+        }
+        for (int[] range : STRING_RANGES) {
+            for (int id = range[0]; id <= range[1]; id++) {
+                sStringIds[id] = range[2];
+            }
+        }
+    }
+
+    /**
+     * The art pack's URL for every condition, formatted for one pack.
+     */
+    private static final class ArtUrls {
+        final String format;
+        final String[] urls = new String[MAX_WEATHER_ID + 1];
+
+        ArtUrls(String format) {
+            this.format = format;
+            for (int id = 0; id <= MAX_WEATHER_ID; id++) {
+                if (sArt[id] != null) {
+                    urls[id] = String.format(Locale.US, format, sArt[id].name);
+                }
+            }
+        }
+    }
+
+    /**
+     * Every condition's string, in one locale.
+     */
+    private static final class ConditionStrings {
+        final Locale locale;
+        final String[] strings = new String[MAX_WEATHER_ID + 1];
+
+        ConditionStrings(Context context, Locale locale) {
+            this.locale = locale;
+            for (int id = 0; id <= MAX_WEATHER_ID; id++) {
+                if (sStringIds[id] != 0) {
+                    strings[id] = context.getString(sStringIds[id]);
+                }
+            }
+        }
+    }
+
+    private static volatile ArtUrls sArtUrls;
+    private static volatile ConditionStrings sConditionStrings;
+
+    private WeatherConditions() {
+    }
+
+    private static boolean inTable(int weatherId) {
+        return weatherId >= 0 && weatherId <= MAX_WEATHER_ID;
+    }
+
+    static int getIconResource(int weatherId) {
+        return inTable(weatherId) && sArt[weatherId] != null ? sArt[weatherId].iconResource : -1;
+    }
+
+    static int getArtResource(int weatherId) {
+        return inTable(weatherId) && sArt[weatherId] != null ? sArt[weatherId].artResource : -1;
+    }
+
+    static String getImageUrl(int weatherId) {
+        return inTable(weatherId) && sArt[weatherId] != null ? sArt[weatherId].imageUrl : null;
+    }
+
+    static String getArtUrl(Context context, int weatherId) {
+        ArtUrls artUrls = sArtUrls;
+        // SunshinePreferences hands out the same string until the art pack changes.
+        String artPack = SunshinePreferences.get(context).getArtPack();
+        if (artUrls == null || artUrls.format != artPack) {
+            artUrls = new ArtUrls(artPack);
+            sArtUrls = artUrls;
+        }
+        return inTable(weatherId) ? artUrls.urls[weatherId] : null;
+    }
+
+    static String getString(Context context, int weatherId) {
+        if (!inTable(weatherId) || sStringIds[weatherId] == 0) {
+            return context.getString(R.string.condition_unknown, weatherId);
+        }
+        ConditionStrings conditionStrings = sConditionStrings;
+        Locale locale = Locale.getDefault();
+        if (conditionStrings == null || conditionStrings.locale != locale) {
+            conditionStrings = new ConditionStrings(context.getApplicationContext(), locale);
+            sConditionStrings = conditionStrings;
+        }
+        return conditionStrings.strings[weatherId];
+    }
+}
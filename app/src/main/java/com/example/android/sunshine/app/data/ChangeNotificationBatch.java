@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the URIs touched by a provider operation so observers can be told once, after the
+ * transaction commits, rather than once per statement.
+ *
+ * Weather changes are recorded by location row id and date and turned into the narrowest URIs
+ * that cover them: a location whose rows changed on a single date is notified on that date's
+ * URI, otherwise on the location's URI.  Since a notification on a URI also reaches observers
+ * of its descendants, any URI whose ancestor is also being notified is dropped.
+ */
+class ChangeNotificationBatch {
+    // location row id -> normalized dates of the weather rows that changed
+    private final HashMap<Long, HashSet<Long>> mWeatherChanges = new HashMap<Long, HashSet<Long>>();
+    // location row ids whose weather changed on dates we didn't track, e.g. a bulk delete
+    private final HashSet<Long> mLocationChanges = new HashSet<Long>();
+    private final LinkedHashSet<Uri> mUris = new LinkedHashSet<Uri>();
+
+    void addUri(Uri uri) {
+        mUris.add(uri);
+    }
+
+    void addWeatherChange(long locationId, long date) {
+        HashSet<Long> dates = mWeatherChanges.get(locationId);
+        if (dates == null) {
+            dates = new HashSet<Long>();
+            mWeatherChanges.put(locationId, dates);
+        }
+        dates.add(date);
+    }
+
+    void addLocationChange(long locationId) {
+        mLocationChanges.add(locationId);
+    }
+
+    /**
+     * @return the location row ids that have weather changes, for resolving their settings.
+     */
+    HashSet<Long> getChangedLocationIds() {
+        HashSet<Long> locationIds = new HashSet<Long>(mWeatherChanges.keySet());
+        locationIds.addAll(mLocationChanges);
+        return locationIds;
+    }
+
+    boolean isEmpty() {
+        return mUris.isEmpty() && mWeatherChanges.isEmpty() && mLocationChanges.isEmpty();
+    }
+
+    /**
+     * Works out the deduplicated set of URIs to notify.
+     *
+     * @param locationSettings location row id -> location setting for every id returned by
+     *                         {@link #getChangedLocationIds()}.  Ids missing from the map fall
+     *                         back to the whole weather URI.
+     */
+    List<Uri> buildUris(Map<Long, String> locationSettings) {
+        LinkedHashSet<Uri> uris = new LinkedHashSet<Uri>(mUris);
+        for (Long locationId : getChangedLocationIds()) {
+            String locationSetting = locationSettings.get(locationId);
+            HashSet<Long> dates = mWeatherChanges.get(locationId);
+            if (locationSetting == null) {
+                uris.add(WeatherContract.WeatherEntry.CONTENT_URI);
+            } else if (dates != null && dates.size() == 1 && !mLocationChanges.contains(locationId)) {
+                uris.add(WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                        locationSetting, dates.iterator().next()));
+            } else {
+                uris.add(WeatherContract.WeatherEntry.buildWeatherLocation(locationSetting));
+            }
+        }
+
+        ArrayList<Uri> result = new ArrayList<Uri>(uris.size());
+        for (Uri uri : uris) {
+            boolean covered = false;
+            for (Uri other : uris) {
+                if (other != uri && isAncestor(other, uri)) {
+                    covered = true;
+                    break;
+                }
+            }
+            if (!covered) {
+                result.add(uri);
+            }
+        }
+        return result;
+    }
+
+    void dispatch(ContentResolver resolver, Map<Long, String> locationSettings) {
+        for (Uri uri : buildUris(locationSettings)) {
+            // Observers are called back asynchronously, so drop the cached snapshots first;
+            // anyone reading after the write returns must not see the old rows.
+            ForecastSnapshotCache.invalidate(uri);
+            resolver.notifyChange(uri, null);
+        }
+    }
+
+    // Content observers match on authority and path segments only, so that's all we compare.
+    private static boolean isAncestor(Uri ancestor, Uri uri) {
+        if (!ancestor.getAuthority().equals(uri.getAuthority())) {
+            return false;
+        }
+        List<String> ancestorSegments = ancestor.getPathSegments();
+        List<String> segments = uri.getPathSegments();
+        if (ancestorSegments.size() >= segments.size()) {
+            return false;
+        }
+        return ancestorSegments.equals(segments.subList(0, ancestorSegments.size()));
+    }
+}
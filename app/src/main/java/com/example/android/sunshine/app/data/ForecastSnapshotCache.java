@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide cache of the forecast from today onwards, per location setting.  The sync
+ * adapter's notification and wearable update, the widgets and Muzei all want the same rows right
+ * after a sync; they read an immutable {@link Snapshot} from here instead of each querying the
+ * provider.  WeatherProvider invalidates the affected locations as it notifies observers, so a
+ * snapshot never outlives a change to its rows.
+ */
+public class ForecastSnapshotCache {
+
+    private static final String[] SNAPSHOT_COLUMNS = {
+            WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES
+    };
+    // these indices must match the projection
+    private static final int INDEX_ID = 0;
+    private static final int INDEX_DATE = 1;
+    private static final int INDEX_WEATHER_ID = 2;
+    private static final int INDEX_SHORT_DESC = 3;
+    private static final int INDEX_MAX_TEMP = 4;
+    private static final int INDEX_MIN_TEMP = 5;
+    private static final int INDEX_HUMIDITY = 6;
+    private static final int INDEX_PRESSURE = 7;
+    private static final int INDEX_WIND_SPEED = 8;
+    private static final int INDEX_DEGREES = 9;
+
+    /**
+     * One stored day of a snapshot.
+     */
+    public static final class Day {
+        public final long id;
+        public final long date;
+        public final int weatherId;
+        public final String description;
+        public final double high;
+        public final double low;
+        public final double humidity;
+        public final double pressure;
+        public final double windSpeed;
+        public final double degrees;
+
+        Day(Cursor cursor) {
+            id = cursor.getLong(INDEX_ID);
+            date = cursor.getLong(INDEX_DATE);
+            weatherId = cursor.getInt(INDEX_WEATHER_ID);
+            description = cursor.getString(INDEX_SHORT_DESC);
+            high = cursor.getDouble(INDEX_MAX_TEMP);
+            low = cursor.getDouble(INDEX_MIN_TEMP);
+            humidity = cursor.getDouble(INDEX_HUMIDITY);
+            pressure = cursor.getDouble(INDEX_PRESSURE);
+            windSpeed = cursor.getDouble(INDEX_WIND_SPEED);
+            degrees = cursor.getDouble(INDEX_DEGREES);
+        }
+    }
+
+    /**
+     * The stored forecast for a location from {@link #startDate} onwards, in date order.
+     */
+    public static final class Snapshot {
+        public final String locationSetting;
+        // The normalized date the snapshot was read from; it is only served on that day.
+        public final long startDate;
+        public final List<Day> days;
+
+        Snapshot(String locationSetting, long startDate, List<Day> days) {
+            this.locationSetting = locationSetting;
+            this.startDate = startDate;
+            this.days = Collections.unmodifiableList(days);
+        }
+
+        /**
+         * @return the first stored day, or null if there isn't one.
+         */
+        public Day getFirstDay() {
+            return days.isEmpty() ? null : days.get(0);
+        }
+
+        /**
+         * @return the stored day for the given date, or null if there isn't one.
+         */
+        public Day getDay(long date) {
+            long normalizedDate = WeatherContract.normalizeDate(date);
+            for (Day day : days) {
+                if (day.date == normalizedDate) {
+                    return day;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final ConcurrentHashMap<String, Snapshot> sSnapshots =
+            new ConcurrentHashMap<String, Snapshot>();
+
+    // Bumped by every invalidation, so a load that raced with one doesn't store what it read.
+    private static final AtomicLong sGeneration = new AtomicLong();
+
+    // Only one thread loads at a time, so readers that miss together share a single query.
+    private static final Object sLoadLock = new Object();
+
+    private ForecastSnapshotCache() {
+    }
+
+    /**
+     * @return the forecast for the location from today onwards, read from the provider if
+     * it isn't cached.  Never null, but may have no days.
+     */
+    public static Snapshot get(Context context, String locationSetting) {
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        Snapshot snapshot = sSnapshots.get(locationSetting);
+        if (snapshot != null && snapshot.startDate == today) {
+            return snapshot;
+        }
+
+        synchronized (sLoadLock) {
+            snapshot = sSnapshots.get(locationSetting);
+            if (snapshot != null && snapshot.startDate == today) {
+                return snapshot;
+            }
+
+            long generation = sGeneration.get();
+            snapshot = load(context, locationSetting, today);
+            if (sGeneration.get() == generation) {
+                sSnapshots.put(locationSetting, snapshot);
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Drops the snapshots a change notification for {@code uri} covers.
+     */
+    static void invalidate(Uri uri) {
+        sGeneration.incrementAndGet();
+        List<String> segments = uri.getPathSegments();
+        if (segments.size() >= 2 && WeatherContract.PATH_WEATHER.equals(segments.get(0))) {
+            sSnapshots.remove(WeatherContract.WeatherEntry.getLocationSettingFromUri(uri));
+        } else if (segments.size() <= 1) {
+            // The whole weather or location table; we can't tell which locations changed.
+            sSnapshots.clear();
+        }
+    }
+
+    private static Snapshot load(Context context, String locationSetting, long startDate) {
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                locationSetting, startDate);
+        Cursor cursor = context.getContentResolver().query(weatherUri, SNAPSHOT_COLUMNS, null,
+                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        ArrayList<Day> days = new ArrayList<Day>();
+        if (cursor != null) {
+            try {
+                while (cursor.moveToNext()) {
+                    days.add(new Day(cursor));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return new Snapshot(locationSetting, startDate, days);
+    }
+}
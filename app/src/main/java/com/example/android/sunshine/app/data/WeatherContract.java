@@ -81,6 +81,16 @@ public class WeatherContract {
         public static final String COLUMN_COORD_LAT = "coord_lat";
         public static final String COLUMN_COORD_LONG = "coord_long";
 
+        // ContentProvider.call method that returns the row for a location setting, adding it if
+        // there isn't one yet.  Takes the location's ContentValues in EXTRA_VALUES and returns
+        // the row's EXTRA_LOCATION_ID, EXTRA_LATITUDE and EXTRA_LONGITUDE.  An existing row is
+        // not changed.
+        public static final String METHOD_ADD_LOCATION = "add_location";
+        public static final String EXTRA_VALUES = "values";
+        public static final String EXTRA_LOCATION_ID = "location_id";
+        public static final String EXTRA_LATITUDE = "latitude";
+        public static final String EXTRA_LONGITUDE = "longitude";
+
         public static Uri buildLocationUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
@@ -126,6 +136,21 @@ public class WeatherContract {
         // Degrees are meteorological degrees (e.g, 0 is north, 180 is south).  Stored as floats.
         public static final String COLUMN_DEGREES = "degrees";
 
+        // ContentProvider.call method that upserts weather rows: rows that already exist for a
+        // (location, date) are only rewritten if one of their values changed.  Takes the rows
+        // as a ContentValues ArrayList in EXTRA_VALUES and returns the counts below.
+        public static final String METHOD_UPSERT = "upsert_weather";
+        public static final String EXTRA_VALUES = "values";
+        public static final String EXTRA_INSERTED_COUNT = "inserted";
+        public static final String EXTRA_UPDATED_COUNT = "updated";
+        public static final String EXTRA_UNCHANGED_COUNT = "unchanged";
+        // long[] of the location ids that had at least one row inserted or updated
+        public static final String EXTRA_CHANGED_LOCATION_IDS = "changed_location_ids";
+        // Optional long: rows dated on or before this are deleted in the same transaction, so
+        // observers hear about the upsert and the pruning of old days together.
+        public static final String EXTRA_DELETE_THROUGH_DATE = "delete_through_date";
+        public static final String EXTRA_DELETED_COUNT = "deleted";
+
         public static Uri buildWeatherUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
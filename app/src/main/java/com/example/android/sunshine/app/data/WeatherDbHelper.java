@@ -18,6 +18,8 @@ package com.example.android.sunshine.app.data;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.SystemClock;
+import android.util.Log;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
@@ -27,13 +29,118 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
  */
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
-    // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    private static final String LOG_TAG = WeatherDbHelper.class.getSimpleName();
+
+    // If you change the database schema, you must increment the database version, update
+    // onCreate, and add a Migration from the previous version to sMigrations.
+    static final int DATABASE_VERSION = 3;
 
     static final String DATABASE_NAME = "weather.db";
 
+    // Weather rows are almost always looked up by location first and then by date, which the
+    // UNIQUE (date, location_id) index can't serve.  That index is still what the pruning of old
+    // days uses.
+    static final String INDEX_WEATHER_LOCATION_DATE = "weather_location_date_idx";
+
+    private static final String SQL_CREATE_WEATHER_LOCATION_DATE_INDEX = "CREATE INDEX " +
+            INDEX_WEATHER_LOCATION_DATE + " ON " + WeatherEntry.TABLE_NAME + " (" +
+            WeatherEntry.COLUMN_LOC_KEY + ", " + WeatherEntry.COLUMN_DATE + ");";
+
+    /**
+     * Upgrades the schema by one version, keeping the cached forecasts.
+     */
+    abstract static class Migration {
+        // The version this migration upgrades from, to fromVersion + 1.
+        final int fromVersion;
+
+        Migration(int fromVersion) {
+            this.fromVersion = fromVersion;
+        }
+
+        abstract void migrate(SQLiteDatabase db);
+    }
+
+    // One entry per version step, in order.  Databases older than the first entry are dropped
+    // and recreated, since we don't know how to migrate them.
+    static final Migration[] sMigrations = {
+            new Migration(2) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    db.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
+                }
+            }
+    };
+
+    /**
+     * How connections to the database are set up.  The sync adapter writes while the loaders,
+     * widgets and Muzei read, so by default the database uses write-ahead logging, which lets
+     * readers carry on against the last committed state instead of waiting for the writer.
+     *
+     * Only the journal mode applies to every connection.  The pragmas are set in onConfigure,
+     * which SQLiteOpenHelper only calls for the primary connection, so they tune the writer
+     * (the sync adapter's inserts) alone; the pooled read-only connections WAL opens for the
+     * loaders and widgets keep SQLite's defaults.
+     */
+    public static class Profile {
+        // Used when no other profile is given.
+        public static final Profile DEFAULT = new Profile(true, "NORMAL", 512, "MEMORY");
+
+        // SQLite's own settings with a rollback journal.  TestConcurrentReads measures it
+        // against DEFAULT, to show what WAL gains the readers.
+        public static final Profile ROLLBACK_JOURNAL = new Profile(false, "FULL", 0, "DEFAULT");
+
+        public final boolean writeAheadLogging;
+        // PRAGMA synchronous: OFF, NORMAL or FULL.  With WAL, NORMAL is still safe against
+        // corruption; a power loss can only lose the last few commits, which the next sync
+        // fetches again anyway.
+        public final String synchronous;
+        // PRAGMA cache_size in KiB, or 0 to keep SQLite's default.
+        public final int cacheSizeKib;
+        // PRAGMA temp_store: DEFAULT, FILE or MEMORY.  Temporary b-trees are built for sorts
+        // and DISTINCT, and are small for this database.
+        public final String tempStore;
+
+        public Profile(boolean writeAheadLogging, String synchronous, int cacheSizeKib,
+                       String tempStore) {
+            this.writeAheadLogging = writeAheadLogging;
+            this.synchronous = synchronous;
+            this.cacheSizeKib = cacheSizeKib;
+            this.tempStore = tempStore;
+        }
+    }
+
+    private final Profile mProfile;
+
     public WeatherDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, Profile.DEFAULT);
+    }
+
+    public WeatherDbHelper(Context context, Profile profile) {
+        this(context, DATABASE_NAME, profile);
+    }
+
+    // For benchmarks, which need a database file of their own to change the journal mode of.
+    WeatherDbHelper(Context context, String name, Profile profile) {
+        super(context, name, null, DATABASE_VERSION);
+        mProfile = profile;
+        // The journal mode applies to the database file, and so to every connection.
+        setWriteAheadLoggingEnabled(profile.writeAheadLogging);
+    }
+
+    /*
+        Called for the primary connection before the database is created or upgraded.  These
+        pragmas are per connection, and Android gives us no hook for the pooled reader
+        connections, so this profile deliberately covers the primary (writing) connection only.
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        db.execSQL("PRAGMA synchronous = " + mProfile.synchronous);
+        if (mProfile.cacheSizeKib > 0) {
+            // A negative cache_size is in KiB rather than pages.
+            db.execSQL("PRAGMA cache_size = -" + mProfile.cacheSizeKib);
+        }
+        db.execSQL("PRAGMA temp_store = " + mProfile.tempStore);
     }
 
     @Override
@@ -81,18 +188,46 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
 
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
-        // Note that this only fires if you change the version number for your database.
-        // It does NOT depend on the version number for your application.
-        // If you want to update the schema without wiping data, commenting out the next 2 lines
-        // should be your top priority before modifying this method.
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
-        onCreate(sqLiteDatabase);
+        // Migrate one version at a time, so a database from any release we know how to migrate
+        // ends up with the same schema onCreate builds, and keeps its forecasts.  This already
+        // runs inside SQLiteOpenHelper's transaction; each step gets a nested one so a failed
+        // step rolls back the whole upgrade rather than leaving a half-migrated schema.
+        for (int version = oldVersion; version < newVersion; version++) {
+            Migration migration = getMigration(version);
+            if (migration == null) {
+                // This database is only a cache for online data, so if we can't migrate it the
+                // policy is to simply discard the data and start over.
+                Log.w(LOG_TAG, "No migration from version " + version + ", recreating database");
+                sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
+                sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+                onCreate(sqLiteDatabase);
+                return;
+            }
+
+            long startMillis = SystemClock.elapsedRealtime();
+            sqLiteDatabase.beginTransaction();
+            try {
+                migration.migrate(sqLiteDatabase);
+                sqLiteDatabase.setTransactionSuccessful();
+            } finally {
+                sqLiteDatabase.endTransaction();
+            }
+            Log.d(LOG_TAG, "Migrated database from version " + version + " to " + (version + 1)
+                    + " in " + (SystemClock.elapsedRealtime() - startMillis) + " ms");
+        }
+    }
+
+    static Migration getMigration(int fromVersion) {
+        for (Migration migration : sMigrations) {
+            if (migration.fromVersion == fromVersion) {
+                return migration;
+            }
+        }
+        return null;
     }
 }
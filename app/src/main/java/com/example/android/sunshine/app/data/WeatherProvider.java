@@ -17,12 +17,22 @@ package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Bundle;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class WeatherProvider extends ContentProvider {
 
@@ -30,12 +40,24 @@ public class WeatherProvider extends ContentProvider {
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
 
+    // The notifications collected by the outermost write operation running on this thread.
+    // Nested operations (e.g. the ones inside applyBatch) add to it, and it is dispatched once
+    // the outermost operation's transaction has committed.
+    private final ThreadLocal<ChangeNotificationBatch> mChangeBatch =
+            new ThreadLocal<ChangeNotificationBatch>();
+
+    // location_setting -> its row, for METHOD_ADD_LOCATION.  Entries are only added inside the
+    // write transaction that looked the row up, and the cache is cleared by any change to the
+    // location table, so it can't hand out the id of a row that has since gone.
+    private final ConcurrentHashMap<String, CachedLocation> mLocationCache =
+            new ConcurrentHashMap<String, CachedLocation>();
+
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
     static final int LOCATION = 300;
 
-    private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
+    static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
 
     static{
         sWeatherByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
@@ -52,22 +74,142 @@ public class WeatherProvider extends ContentProvider {
     }
 
     //location.location_setting = ?
-    private static final String sLocationSettingSelection =
+    static final String sLocationSettingSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? ";
 
     //location.location_setting = ? AND date >= ?
-    private static final String sLocationSettingWithStartDateSelection =
+    static final String sLocationSettingWithStartDateSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
 
     //location.location_setting = ? AND date = ?
-    private static final String sLocationSettingAndDaySelection =
+    static final String sLocationSettingAndDaySelection =
             WeatherContract.LocationEntry.TABLE_NAME +
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
 
+    //date <= ?
+    static final String sDateThroughSelection =
+            WeatherContract.WeatherEntry.COLUMN_DATE + " <= ? ";
+
+    // The columns bound by the weather upsert statements, in parameter order.  The first two make
+    // up the table's unique key.
+    private static final String[] sWeatherUpsertColumns = {
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES
+    };
+
+    //UPDATE weather SET short_desc = ?3, ... WHERE location_id = ?1 AND date = ?2
+    //      AND NOT (short_desc = ?3 AND ...)
+    static final String sWeatherUpdateIfChangedSql;
+
+    //INSERT OR IGNORE INTO weather (location_id, date, ...) VALUES (?1, ?2, ...)
+    private static final String sWeatherInsertOrIgnoreSql;
+
+    //INSERT OR IGNORE INTO location (location_setting, city_name, coord_lat, coord_long)
+    //      VALUES (?, ?, ?, ?)
+    private static final String sLocationInsertOrIgnoreSql =
+            "INSERT OR IGNORE INTO " + WeatherContract.LocationEntry.TABLE_NAME + " (" +
+                    WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + ", " +
+                    WeatherContract.LocationEntry.COLUMN_CITY_NAME + ", " +
+                    WeatherContract.LocationEntry.COLUMN_COORD_LAT + ", " +
+                    WeatherContract.LocationEntry.COLUMN_COORD_LONG + ") VALUES (?, ?, ?, ?)";
+
+    //location_setting = ?
+    private static final String sLocationSettingOnlySelection =
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?";
+
+    static{
+        StringBuilder set = new StringBuilder();
+        StringBuilder unchanged = new StringBuilder();
+        StringBuilder columns = new StringBuilder();
+        StringBuilder params = new StringBuilder();
+        for (int i = 0; i < sWeatherUpsertColumns.length; i++) {
+            String column = sWeatherUpsertColumns[i];
+            String param = "?" + (i + 1);
+            if (i > 0) {
+                columns.append(", ");
+                params.append(", ");
+            }
+            columns.append(column);
+            params.append(param);
+            if (i >= 2) {
+                if (i > 2) {
+                    set.append(", ");
+                    unchanged.append(" AND ");
+                }
+                set.append(column).append(" = ").append(param);
+                unchanged.append(column).append(" = ").append(param);
+            }
+        }
+        sWeatherUpdateIfChangedSql = "UPDATE " + WeatherContract.WeatherEntry.TABLE_NAME +
+                " SET " + set +
+                " WHERE " + WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ?1 AND " +
+                WeatherContract.WeatherEntry.COLUMN_DATE + " = ?2 AND NOT (" + unchanged + ")";
+        sWeatherInsertOrIgnoreSql = "INSERT OR IGNORE INTO " +
+                WeatherContract.WeatherEntry.TABLE_NAME +
+                " (" + columns + ") VALUES (" + params + ")";
+    }
+
+    /**
+     * What an upsert did with the rows it was given.
+     */
+    static class UpsertCounts {
+        int inserted;
+        int updated;
+        int unchanged;
+        int deleted;
+        final HashSet<Long> changedLocationIds = new HashSet<Long>();
+
+        Bundle toBundle() {
+            Bundle bundle = new Bundle();
+            bundle.putInt(WeatherContract.WeatherEntry.EXTRA_INSERTED_COUNT, inserted);
+            bundle.putInt(WeatherContract.WeatherEntry.EXTRA_UPDATED_COUNT, updated);
+            bundle.putInt(WeatherContract.WeatherEntry.EXTRA_UNCHANGED_COUNT, unchanged);
+            bundle.putInt(WeatherContract.WeatherEntry.EXTRA_DELETED_COUNT, deleted);
+            long[] locationIds = new long[changedLocationIds.size()];
+            int i = 0;
+            for (Long locationId : changedLocationIds) {
+                locationIds[i++] = locationId;
+            }
+            bundle.putLongArray(WeatherContract.WeatherEntry.EXTRA_CHANGED_LOCATION_IDS, locationIds);
+            return bundle;
+        }
+    }
+
+    /**
+     * A location row as returned by METHOD_ADD_LOCATION.
+     */
+    static class CachedLocation {
+        final long id;
+        final double latitude;
+        final double longitude;
+
+        CachedLocation(long id, double latitude, double longitude) {
+            this.id = id;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+
+        Bundle toBundle() {
+            Bundle bundle = new Bundle();
+            bundle.putLong(WeatherContract.LocationEntry.EXTRA_LOCATION_ID, id);
+            bundle.putDouble(WeatherContract.LocationEntry.EXTRA_LATITUDE, latitude);
+            bundle.putDouble(WeatherContract.LocationEntry.EXTRA_LONGITUDE, longitude);
+            return bundle;
+        }
+    }
+
     private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
@@ -228,30 +370,45 @@ public class WeatherProvider extends ContentProvider {
     public Uri insert(Uri uri, ContentValues values) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
+        final ChangeNotificationBatch ownBatch = beginChangeBatch();
+        boolean successful = false;
         Uri returnUri;
 
-        switch (match) {
-            case WEATHER: {
-                normalizeDate(values);
-                long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
-                if ( _id > 0 )
-                    returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
-                else
-                    throw new android.database.SQLException("Failed to insert row into " + uri);
-                break;
-            }
-            case LOCATION: {
-                long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
-                if ( _id > 0 )
-                    returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
-                else
-                    throw new android.database.SQLException("Failed to insert row into " + uri);
-                break;
+        try {
+            switch (match) {
+                case WEATHER: {
+                    normalizeDate(values);
+                    long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+                    if ( _id > 0 )
+                        returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
+                    else
+                        throw new android.database.SQLException("Failed to insert row into " + uri);
+                    mChangeBatch.get().addWeatherChange(
+                            values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY),
+                            values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE));
+                    break;
+                }
+                case LOCATION: {
+                    String locationSetting = values.getAsString(
+                            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING);
+                    if (locationSetting != null) {
+                        mLocationCache.remove(locationSetting);
+                    }
+                    long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
+                    if ( _id > 0 )
+                        returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
+                    else
+                        throw new android.database.SQLException("Failed to insert row into " + uri);
+                    mChangeBatch.get().addUri(returnUri);
+                    break;
+                }
+                default:
+                    throw new UnsupportedOperationException("Unknown uri: " + uri);
             }
-            default:
-                throw new UnsupportedOperationException("Unknown uri: " + uri);
+            successful = true;
+        } finally {
+            endChangeBatch(ownBatch, successful);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
         return returnUri;
     }
 
@@ -259,24 +416,32 @@ public class WeatherProvider extends ContentProvider {
     public int delete(Uri uri, String selection, String[] selectionArgs) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
+        final ChangeNotificationBatch ownBatch = beginChangeBatch();
+        boolean successful = false;
         int rowsDeleted;
         // this makes delete all rows return the number of rows deleted
         if ( null == selection ) selection = "1";
-        switch (match) {
-            case WEATHER:
-                rowsDeleted = db.delete(
-                        WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
-                break;
-            case LOCATION:
-                rowsDeleted = db.delete(
-                        WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
-                break;
-            default:
-                throw new UnsupportedOperationException("Unknown uri: " + uri);
-        }
-        // Because a null deletes all rows
-        if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+        try {
+            switch (match) {
+                case WEATHER:
+                    rowsDeleted = db.delete(
+                            WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                    break;
+                case LOCATION:
+                    rowsDeleted = db.delete(
+                            WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                    mLocationCache.clear();
+                    break;
+                default:
+                    throw new UnsupportedOperationException("Unknown uri: " + uri);
+            }
+            // Because a null deletes all rows
+            if (rowsDeleted != 0) {
+                mChangeBatch.get().addUri(uri);
+            }
+            successful = true;
+        } finally {
+            endChangeBatch(ownBatch, successful);
         }
         return rowsDeleted;
     }
@@ -294,54 +459,333 @@ public class WeatherProvider extends ContentProvider {
             Uri uri, ContentValues values, String selection, String[] selectionArgs) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
+        final ChangeNotificationBatch ownBatch = beginChangeBatch();
+        boolean successful = false;
         int rowsUpdated;
 
-        switch (match) {
-            case WEATHER:
-                normalizeDate(values);
-                rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
-                break;
-            case LOCATION:
-                rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
-                break;
-            default:
-                throw new UnsupportedOperationException("Unknown uri: " + uri);
-        }
-        if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+        try {
+            switch (match) {
+                case WEATHER:
+                    normalizeDate(values);
+                    rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values,
+                            selection, selectionArgs);
+                    break;
+                case LOCATION:
+                    rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values,
+                            selection, selectionArgs);
+                    mLocationCache.clear();
+                    break;
+                default:
+                    throw new UnsupportedOperationException("Unknown uri: " + uri);
+            }
+            if (rowsUpdated != 0) {
+                mChangeBatch.get().addUri(uri);
+            }
+            successful = true;
+        } finally {
+            endChangeBatch(ownBatch, successful);
         }
         return rowsUpdated;
     }
 
     @Override
     public int bulkInsert(Uri uri, ContentValues[] values) {
-        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case WEATHER:
-                db.beginTransaction();
-                int returnCount = 0;
+                final ChangeNotificationBatch ownBatch = beginChangeBatch();
+                boolean successful = false;
                 try {
-                    for (ContentValues value : values) {
-                        normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
-                        if (_id != -1) {
-                            returnCount++;
-                        }
-                    }
-                    db.setTransactionSuccessful();
+                    UpsertCounts counts = upsertWeather(values, -1);
+                    successful = true;
+                    return counts.inserted + counts.updated + counts.unchanged;
                 } finally {
-                    db.endTransaction();
+                    endChangeBatch(ownBatch, successful);
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
-                return returnCount;
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (WeatherContract.WeatherEntry.METHOD_UPSERT.equals(method)) {
+            ArrayList<ContentValues> values =
+                    extras.getParcelableArrayList(WeatherContract.WeatherEntry.EXTRA_VALUES);
+            long deleteThroughDate =
+                    extras.getLong(WeatherContract.WeatherEntry.EXTRA_DELETE_THROUGH_DATE, -1);
+            final ChangeNotificationBatch ownBatch = beginChangeBatch();
+            boolean successful = false;
+            try {
+                UpsertCounts counts = upsertWeather(
+                        values.toArray(new ContentValues[values.size()]), deleteThroughDate);
+                successful = true;
+                return counts.toBundle();
+            } finally {
+                endChangeBatch(ownBatch, successful);
+            }
+        } else if (WeatherContract.LocationEntry.METHOD_ADD_LOCATION.equals(method)) {
+            ContentValues values = extras.getParcelable(WeatherContract.LocationEntry.EXTRA_VALUES);
+            CachedLocation location = mLocationCache.get(
+                    values.getAsString(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING));
+            if (location != null) {
+                return location.toBundle();
+            }
+            final ChangeNotificationBatch ownBatch = beginChangeBatch();
+            boolean successful = false;
+            try {
+                location = addLocation(values);
+                successful = true;
+                return location.toBundle();
+            } finally {
+                endChangeBatch(ownBatch, successful);
+            }
+        }
+        return super.call(method, arg, extras);
+    }
+
+    /*
+        Inserts the location unless a row for its setting already exists, and looks up the row
+        if it did, in one transaction so a concurrent delete can't slip in between.
+     */
+    private CachedLocation addLocation(ContentValues values) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        String locationSetting =
+                values.getAsString(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING);
+        CachedLocation location;
+        db.beginTransaction();
+        try {
+            SQLiteStatement insertStatement = db.compileStatement(sLocationInsertOrIgnoreSql);
+            long _id;
+            try {
+                insertStatement.bindString(1, locationSetting);
+                insertStatement.bindString(2,
+                        values.getAsString(WeatherContract.LocationEntry.COLUMN_CITY_NAME));
+                insertStatement.bindDouble(3,
+                        values.getAsDouble(WeatherContract.LocationEntry.COLUMN_COORD_LAT));
+                insertStatement.bindDouble(4,
+                        values.getAsDouble(WeatherContract.LocationEntry.COLUMN_COORD_LONG));
+                _id = insertStatement.executeInsert();
+            } finally {
+                insertStatement.close();
+            }
+
+            if (_id != -1) {
+                location = new CachedLocation(_id,
+                        values.getAsDouble(WeatherContract.LocationEntry.COLUMN_COORD_LAT),
+                        values.getAsDouble(WeatherContract.LocationEntry.COLUMN_COORD_LONG));
+                mChangeBatch.get().addUri(WeatherContract.LocationEntry.buildLocationUri(_id));
+            } else {
+                Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                        new String[]{WeatherContract.LocationEntry._ID,
+                                WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+                                WeatherContract.LocationEntry.COLUMN_COORD_LONG},
+                        sLocationSettingOnlySelection,
+                        new String[]{locationSetting},
+                        null,
+                        null,
+                        null);
+                try {
+                    if (!cursor.moveToFirst()) {
+                        throw new android.database.SQLException(
+                                "Failed to add location " + locationSetting);
+                    }
+                    location = new CachedLocation(cursor.getLong(0), cursor.getDouble(1),
+                            cursor.getDouble(2));
+                } finally {
+                    cursor.close();
+                }
+            }
+            mLocationCache.put(locationSetting, location);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return location;
+    }
+
+    /*
+        Runs the whole batch in one transaction, so a failure part way through leaves nothing
+        behind and observers are only notified once, after everything has been applied.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final ChangeNotificationBatch ownBatch = beginChangeBatch();
+        boolean successful = false;
+        db.beginTransaction();
+        try {
+            ContentProviderResult[] results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+            successful = true;
+            return results;
+        } finally {
+            db.endTransaction();
+            endChangeBatch(ownBatch, successful);
+        }
+    }
+
+    /**
+     * Starts collecting notifications for a write operation, unless an enclosing operation on
+     * this thread is already collecting them.
+     *
+     * @return the new batch, which the caller has to pass to {@link #endChangeBatch}, or null
+     * if the notifications belong to the enclosing operation.
+     */
+    private ChangeNotificationBatch beginChangeBatch() {
+        if (mChangeBatch.get() != null) {
+            return null;
+        }
+        ChangeNotificationBatch batch = new ChangeNotificationBatch();
+        mChangeBatch.set(batch);
+        return batch;
+    }
+
+    private void endChangeBatch(ChangeNotificationBatch batch, boolean successful) {
+        if (batch == null) {
+            return;
+        }
+        mChangeBatch.remove();
+        if (successful && !batch.isEmpty()) {
+            batch.dispatch(getContext().getContentResolver(),
+                    getLocationSettings(batch.getChangedLocationIds()));
+        }
+    }
+
+    /**
+     * @return location row id -> location setting for the given ids that still exist.
+     */
+    private HashMap<Long, String> getLocationSettings(HashSet<Long> locationIds) {
+        HashMap<Long, String> locationSettings = new HashMap<Long, String>();
+        if (locationIds.isEmpty()) {
+            return locationSettings;
+        }
+        StringBuilder selection = new StringBuilder(WeatherContract.LocationEntry._ID + " IN (");
+        String[] selectionArgs = new String[locationIds.size()];
+        int i = 0;
+        for (Long locationId : locationIds) {
+            selection.append(i > 0 ? ",?" : "?");
+            selectionArgs[i++] = Long.toString(locationId);
+        }
+        selection.append(")");
+
+        Cursor cursor = mOpenHelper.getReadableDatabase().query(
+                WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry._ID,
+                        WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                selection.toString(),
+                selectionArgs,
+                null,
+                null,
+                null);
+        try {
+            while (cursor.moveToNext()) {
+                locationSettings.put(cursor.getLong(0), cursor.getString(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return locationSettings;
+    }
+
+    /*
+        Writes weather rows in one transaction without churning rows that haven't changed.  The
+        table's ON CONFLICT REPLACE would delete and re-insert every row (and hand out a new _ID)
+        even when the forecast is identical, so instead each row is first updated in place if
+        any of its values differ, and only inserted if there was no row for its location and
+        date yet.  Rows dated on or before deleteThroughDate are then removed, unless it is -1.
+        Must be called with a change batch open; the changed rows are recorded in it.
+     */
+    private UpsertCounts upsertWeather(ContentValues[] values, long deleteThroughDate) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final ChangeNotificationBatch batch = mChangeBatch.get();
+        UpsertCounts counts = new UpsertCounts();
+        SQLiteStatement updateStatement = null;
+        SQLiteStatement insertStatement = null;
+        db.beginTransaction();
+        try {
+            updateStatement = db.compileStatement(sWeatherUpdateIfChangedSql);
+            insertStatement = db.compileStatement(sWeatherInsertOrIgnoreSql);
+            for (ContentValues value : values) {
+                normalizeDate(value);
+                if (!bindWeatherValues(updateStatement, value)) {
+                    continue;
+                }
+                long locationId = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+                long date = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+                if (updateStatement.executeUpdateDelete() > 0) {
+                    counts.updated++;
+                    counts.changedLocationIds.add(locationId);
+                    batch.addWeatherChange(locationId, date);
+                    continue;
+                }
+                bindWeatherValues(insertStatement, value);
+                if (insertStatement.executeInsert() != -1) {
+                    counts.inserted++;
+                    counts.changedLocationIds.add(locationId);
+                    batch.addWeatherChange(locationId, date);
+                } else {
+                    counts.unchanged++;
+                }
+            }
+            if (deleteThroughDate != -1) {
+                counts.deleted = deleteWeatherThrough(db, deleteThroughDate, batch);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            if (updateStatement != null) {
+                updateStatement.close();
+            }
+            if (insertStatement != null) {
+                insertStatement.close();
+            }
+            db.endTransaction();
+        }
+        return counts;
+    }
+
+    private static int deleteWeatherThrough(SQLiteDatabase db, long date,
+                                            ChangeNotificationBatch batch) {
+        String[] selectionArgs = new String[]{Long.toString(WeatherContract.normalizeDate(date))};
+        // Find out whose rows are about to go, so only their observers are told.  Not DISTINCT:
+        // the batch dedupes, and without it SQLite can read just the (date, location_id) index.
+        Cursor cursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                new String[]{WeatherContract.WeatherEntry.COLUMN_LOC_KEY},
+                sDateThroughSelection, selectionArgs, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                batch.addLocationChange(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return db.delete(WeatherContract.WeatherEntry.TABLE_NAME, sDateThroughSelection,
+                selectionArgs);
+    }
+
+    /**
+     * Binds the upsert columns of a weather row to the statement's parameters by index.
+     *
+     * @return false if the row is missing one of the columns, in which case it can't be stored.
+     */
+    private static boolean bindWeatherValues(SQLiteStatement statement, ContentValues value) {
+        statement.clearBindings();
+        for (int i = 0; i < sWeatherUpsertColumns.length; i++) {
+            Object columnValue = value.get(sWeatherUpsertColumns[i]);
+            if (columnValue == null) {
+                return false;
+            } else if (columnValue instanceof Double || columnValue instanceof Float) {
+                statement.bindDouble(i + 1, ((Number) columnValue).doubleValue());
+            } else if (columnValue instanceof Number) {
+                statement.bindLong(i + 1, ((Number) columnValue).longValue());
+            } else {
+                statement.bindString(i + 1, columnValue.toString());
+            }
+        }
+        return true;
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
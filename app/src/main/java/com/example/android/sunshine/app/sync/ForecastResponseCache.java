@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.net.HttpURLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Remembers, per forecast query URI, the validators and content hash of the last response that
+ * was stored.  The sync adapter uses them to make conditional requests and to skip the database
+ * write and the widget/Muzei/wearable fan-out when the forecast hasn't changed.
+ */
+public class ForecastResponseCache {
+    private static final String PREFS_NAME = "forecast_response_cache";
+
+    private static final String SUFFIX_ETAG = "#etag";
+    private static final String SUFFIX_LAST_MODIFIED = "#last_modified";
+    private static final String SUFFIX_CONTENT_HASH = "#content_hash";
+    private static final String SUFFIX_JULIAN_DAY = "#julian_day";
+
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+
+    /**
+     * What we know about the last stored response for a query.
+     */
+    public static class Entry {
+        public final String eTag;
+        public final String lastModified;
+        public final String contentHash;
+        // The local julian day the stored rows were dated from.  The same body on a later day
+        // still has to be written, since the rows are dated relative to the day of the sync.
+        public final int julianDay;
+
+        public Entry(String eTag, String lastModified, String contentHash, int julianDay) {
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.contentHash = contentHash;
+            this.julianDay = julianDay;
+        }
+
+        /**
+         * Adds the conditional request headers for this entry to a connection that has not been
+         * connected yet.
+         */
+        public void addConditionalHeaders(HttpURLConnection connection) {
+            if (eTag != null) {
+                connection.setRequestProperty(HEADER_IF_NONE_MATCH, eTag);
+            }
+            if (lastModified != null) {
+                connection.setRequestProperty(HEADER_IF_MODIFIED_SINCE, lastModified);
+            }
+        }
+
+        /**
+         * @return a copy of this entry with the validators returned by {@code connection}.
+         */
+        public Entry withValidatorsFrom(HttpURLConnection connection) {
+            return new Entry(connection.getHeaderField(HEADER_ETAG),
+                    connection.getHeaderField(HEADER_LAST_MODIFIED), contentHash, julianDay);
+        }
+    }
+
+    private final SharedPreferences mPrefs;
+
+    public ForecastResponseCache(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @param key the query URI
+     * @return the cached entry, or null if there isn't one.
+     */
+    public Entry get(String key) {
+        String contentHash = mPrefs.getString(key + SUFFIX_CONTENT_HASH, null);
+        if (contentHash == null) {
+            return null;
+        }
+        return new Entry(mPrefs.getString(key + SUFFIX_ETAG, null),
+                mPrefs.getString(key + SUFFIX_LAST_MODIFIED, null),
+                contentHash,
+                mPrefs.getInt(key + SUFFIX_JULIAN_DAY, 0));
+    }
+
+    public void put(String key, Entry entry) {
+        mPrefs.edit()
+                .putString(key + SUFFIX_ETAG, entry.eTag)
+                .putString(key + SUFFIX_LAST_MODIFIED, entry.lastModified)
+                .putString(key + SUFFIX_CONTENT_HASH, entry.contentHash)
+                .putInt(key + SUFFIX_JULIAN_DAY, entry.julianDay)
+                .apply();
+    }
+
+    public void remove(String key) {
+        mPrefs.edit()
+                .remove(key + SUFFIX_ETAG)
+                .remove(key + SUFFIX_LAST_MODIFIED)
+                .remove(key + SUFFIX_CONTENT_HASH)
+                .remove(key + SUFFIX_JULIAN_DAY)
+                .apply();
+    }
+
+    /**
+     * @return a digest suitable for hashing response bodies, or null if the platform doesn't
+     * provide one (in which case responses are simply never considered unchanged).
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    public static String toHex(byte[] hash) {
+        final char[] hexDigits = "0123456789abcdef".toCharArray();
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[i * 2] = hexDigits[(hash[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = hexDigits[hash[i] & 0xf];
+        }
+        return new String(hex);
+    }
+}
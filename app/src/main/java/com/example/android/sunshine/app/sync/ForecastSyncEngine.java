@@ -0,0 +1,373 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.text.format.Time;
+import android.util.Log;
+
+import com.example.android.sunshine.app.BuildConfig;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Fetches the forecasts for a set of locations in one pass.  The HTTP requests run on a bounded
+ * pool of worker threads; the results are handed back to the caller, which writes all of them to
+ * the database in a single transaction.
+ */
+public class ForecastSyncEngine {
+    public static final String LOG_TAG = ForecastSyncEngine.class.getSimpleName();
+
+    // Construct the URL for the OpenWeatherMap query
+    // Possible parameters are avaiable at OWM's forecast API page, at
+    // http://openweathermap.org/API#forecast
+    private static final String FORECAST_BASE_URL =
+            "http://api.openweathermap.org/data/2.5/forecast/daily?";
+    private static final String QUERY_PARAM = "q";
+    private static final String LAT_PARAM = "lat";
+    private static final String LON_PARAM = "lon";
+    private static final String FORMAT_PARAM = "mode";
+    private static final String UNITS_PARAM = "units";
+    private static final String DAYS_PARAM = "cnt";
+    private static final String APPID_PARAM = "APPID";
+
+    private static final String FORMAT = "json";
+    private static final String UNITS = "metric";
+    private static final int NUM_DAYS = 14;
+
+    // The forecast was downloaded and parsed and should be stored.
+    public static final int RESULT_FETCHED = 0;
+    // The server answered our conditional request with a 304.
+    public static final int RESULT_NOT_MODIFIED = 1;
+    // The server sent the same body we stored last time.
+    public static final int RESULT_UNCHANGED = 2;
+    // Something went wrong, see ForecastResult.locationStatus.
+    public static final int RESULT_FAILED = 3;
+
+    /**
+     * A location to fetch the forecast for.
+     */
+    public static class ForecastRequest {
+        public final String locationSetting;
+        final boolean useLatLon;
+        final float latitude;
+        final float longitude;
+
+        private ForecastRequest(String locationSetting, boolean useLatLon, float latitude,
+                                float longitude) {
+            this.locationSetting = locationSetting;
+            this.useLatLon = useLatLon;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+
+        public static ForecastRequest forLocationSetting(String locationSetting) {
+            return new ForecastRequest(locationSetting, false, 0, 0);
+        }
+
+        /**
+         * Instead of always building the query based off of the location string, we want to
+         * potentially build a query using a lat/lon value. This will be the case when we are
+         * syncing based off of a new location from the Place Picker API; otherwise the weather
+         * service may not understand the location address provided by the Place Picker API.
+         */
+        public static ForecastRequest forLatLon(String locationSetting, float latitude,
+                                                float longitude) {
+            return new ForecastRequest(locationSetting, true, latitude, longitude);
+        }
+
+        Uri buildUri() {
+            Uri.Builder uriBuilder = Uri.parse(FORECAST_BASE_URL).buildUpon();
+            if (useLatLon) {
+                uriBuilder.appendQueryParameter(LAT_PARAM, String.valueOf(latitude))
+                        .appendQueryParameter(LON_PARAM, String.valueOf(longitude));
+            } else {
+                uriBuilder.appendQueryParameter(QUERY_PARAM, locationSetting);
+            }
+            return uriBuilder.appendQueryParameter(FORMAT_PARAM, FORMAT)
+                    .appendQueryParameter(UNITS_PARAM, UNITS)
+                    .appendQueryParameter(DAYS_PARAM, Integer.toString(NUM_DAYS))
+                    .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
+                    .build();
+        }
+    }
+
+    /**
+     * The outcome of fetching one location.
+     */
+    public static class ForecastResult {
+        public final ForecastRequest request;
+        public int result = RESULT_FAILED;
+        @SunshineSyncAdapter.LocationStatus
+        public int locationStatus = SunshineSyncAdapter.LOCATION_STATUS_OK;
+        public ForecastJsonParser.Forecast forecast;
+        // Time spent on the request and the parse, in milliseconds.
+        public long fetchMillis;
+
+        String cacheKey;
+        ForecastResponseCache.Entry cacheEntry;
+
+        ForecastResult(ForecastRequest request) {
+            this.request = request;
+        }
+
+        void fail(@SunshineSyncAdapter.LocationStatus int status) {
+            result = RESULT_FAILED;
+            locationStatus = status;
+            forecast = null;
+        }
+    }
+
+    private final Context mContext;
+    private final int mMaxConcurrentFetches;
+    private final ForecastResponseCache mResponseCache;
+
+    /**
+     * @param maxConcurrentFetches the most forecast requests to have in flight at once.
+     */
+    public ForecastSyncEngine(Context context, int maxConcurrentFetches) {
+        mContext = context;
+        mMaxConcurrentFetches = Math.max(1, maxConcurrentFetches);
+        mResponseCache = new ForecastResponseCache(context);
+    }
+
+    /**
+     * Fetches every request, at most {@code maxConcurrentFetches} at a time, and blocks until all
+     * of them are done.
+     *
+     * @return one result per request, in the same order.
+     */
+    public List<ForecastResult> fetchAll(List<ForecastRequest> requests) {
+        List<ForecastResult> results = new ArrayList<ForecastResult>(requests.size());
+        if (requests.size() == 1) {
+            // No need to spin up a pool for the common case.
+            results.add(fetch(requests.get(0)));
+            return results;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(mMaxConcurrentFetches, requests.size()));
+        List<Future<ForecastResult>> futures = new ArrayList<Future<ForecastResult>>(requests.size());
+        try {
+            for (final ForecastRequest request : requests) {
+                futures.add(executor.submit(new Callable<ForecastResult>() {
+                    @Override
+                    public ForecastResult call() {
+                        return fetch(request);
+                    }
+                }));
+            }
+
+            boolean interrupted = false;
+            for (int i = 0; i < requests.size(); i++) {
+                ForecastResult result;
+                if (interrupted) {
+                    result = new ForecastResult(requests.get(i));
+                    result.fail(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN);
+                } else {
+                    try {
+                        result = futures.get(i).get();
+                    } catch (InterruptedException e) {
+                        // The sync was cancelled; don't wait for the rest.
+                        Thread.currentThread().interrupt();
+                        interrupted = true;
+                        result = new ForecastResult(requests.get(i));
+                        result.fail(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN);
+                    } catch (ExecutionException e) {
+                        Log.e(LOG_TAG, "Error fetching " + requests.get(i).locationSetting, e);
+                        result = new ForecastResult(requests.get(i));
+                        result.fail(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN);
+                    }
+                }
+                results.add(result);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    /**
+     * Remembers the response behind a result once its rows have been stored, so the next sync
+     * can skip it if nothing changed.
+     */
+    public void commit(ForecastResult result) {
+        if (result.cacheKey == null) {
+            return;
+        }
+        if (result.result == RESULT_FAILED || result.cacheEntry == null) {
+            mResponseCache.remove(result.cacheKey);
+        } else {
+            mResponseCache.put(result.cacheKey, result.cacheEntry);
+        }
+    }
+
+    ForecastResult fetch(ForecastRequest request) {
+        final long startMillis = SystemClock.elapsedRealtime();
+        ForecastResult result = new ForecastResult(request);
+
+        // These two need to be declared outside the try/catch
+        // so that they can be closed in the finally block.
+        HttpURLConnection urlConnection = null;
+        Reader reader = null;
+
+        try {
+            Uri builtUri = request.buildUri();
+            URL url = new URL(builtUri.toString());
+
+            // Only trust the cached response if it was stored today and its rows are still in
+            // the database; otherwise always fetch and write the full forecast.
+            result.cacheKey = builtUri.toString();
+            ForecastResponseCache.Entry cachedResponse = mResponseCache.get(result.cacheKey);
+            if (cachedResponse != null && (cachedResponse.julianDay != getLocalJulianDay()
+                    || !hasForecastForToday(request.locationSetting))) {
+                cachedResponse = null;
+            }
+
+            // Create the request to OpenWeatherMap, and open the connection
+            urlConnection = (HttpURLConnection) url.openConnection();
+            urlConnection.setRequestMethod("GET");
+            if (cachedResponse != null) {
+                cachedResponse.addConditionalHeaders(urlConnection);
+            }
+            urlConnection.connect();
+
+            if (cachedResponse != null
+                    && urlConnection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                result.result = RESULT_NOT_MODIFIED;
+                result.cacheEntry = cachedResponse;
+                return result;
+            }
+
+            // Parse the forecast straight off the socket rather than buffering the whole body,
+            // hashing the bytes as they go by so we can tell whether anything changed.
+            InputStream inputStream = urlConnection.getInputStream();
+            if (inputStream == null) {
+                result.fail(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN);
+                return result;
+            }
+            MessageDigest digest = ForecastResponseCache.newDigest();
+            if (digest != null) {
+                inputStream = new DigestInputStream(inputStream, digest);
+            }
+            reader = new InputStreamReader(inputStream, "UTF-8");
+
+            ForecastJsonParser.Forecast forecast = ForecastJsonParser.parse(reader);
+
+            String contentHash = null;
+            if (digest != null) {
+                // The parser may stop short of the end of the body; hash all of it.
+                final char[] skipBuffer = new char[256];
+                while (reader.read(skipBuffer) != -1) {
+                    // draining
+                }
+                contentHash = ForecastResponseCache.toHex(digest.digest());
+            }
+
+            // do we have an error?
+            switch (forecast.messageCode) {
+                case HttpURLConnection.HTTP_OK:
+                    break;
+                case HttpURLConnection.HTTP_NOT_FOUND:
+                    result.fail(SunshineSyncAdapter.LOCATION_STATUS_INVALID);
+                    return result;
+                default:
+                    result.fail(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN);
+                    return result;
+            }
+
+            if (cachedResponse != null && cachedResponse.contentHash.equals(contentHash)) {
+                result.result = RESULT_UNCHANGED;
+                result.cacheEntry = cachedResponse.withValidatorsFrom(urlConnection);
+                return result;
+            }
+
+            result.result = RESULT_FETCHED;
+            result.forecast = forecast;
+            if (contentHash != null && !forecast.days.isEmpty()) {
+                result.cacheEntry = new ForecastResponseCache.Entry(null, null, contentHash,
+                        getLocalJulianDay()).withValidatorsFrom(urlConnection);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error ", e);
+            // If the code didn't successfully get the weather data, there's no point in attempting
+            // to parse it.
+            result.fail(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN);
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+            result.fail(SunshineSyncAdapter.LOCATION_STATUS_SERVER_INVALID);
+        } finally {
+            if (urlConnection != null) {
+                urlConnection.disconnect();
+            }
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (final IOException e) {
+                    Log.e(LOG_TAG, "Error closing stream", e);
+                }
+            }
+            result.fetchMillis = SystemClock.elapsedRealtime() - startMillis;
+        }
+        return result;
+    }
+
+    /**
+     * @return the julian day of the current local date.
+     */
+    static int getLocalJulianDay() {
+        Time dayTime = new Time();
+        dayTime.setToNow();
+        return Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+    }
+
+    /**
+     * @return true if the database has a forecast row for today at the given location.
+     */
+    private boolean hasForecastForToday(String locationSetting) {
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                locationSetting, System.currentTimeMillis());
+        Cursor cursor = mContext.getContentResolver().query(weatherUri,
+                new String[]{WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID},
+                null, null, null);
+        if (cursor == null) {
+            return false;
+        }
+        boolean hasForecast = cursor.moveToFirst();
+        cursor.close();
+        return hasForecast;
+    }
+}
@@ -1,22 +1,70 @@
 package com.example.android.sunshine.app.sync;
 
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.sunshine.app.R;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
 import com.google.android.gms.wearable.WearableListenerService;
 
+/**
+ * Answers the watch face's requests for the forecast.  The watch is sent what's already stored,
+ * and a network sync is only started when that is older than R.integer.
+ * wearable_max_forecast_age_minutes.  Requests that arrive within REQUEST_COLLAPSE_MS of one we
+ * answered, as they do when several watch face engines start together, are ignored.
+ */
 public class SunshineWatchFaceListenerService extends WearableListenerService {
+    private static final String LOG_TAG = SunshineWatchFaceListenerService.class.getSimpleName();
 
     public static final String WATCH_FACE_SYNC_REQUEST = "/SunshineWatchFaceListenerService/Sync";
 
+    private static final long REQUEST_COLLAPSE_MS = 30 * 1000;
+
+    // elapsedRealtime of the last request we answered.  Guarded by the class.
+    private static long sLastAnsweredMillis = -REQUEST_COLLAPSE_MS;
+
     @Override
     public void onDataChanged(DataEventBuffer dataEvents){
 
+        boolean syncRequested = false;
         for(int i = 0; i < dataEvents.getCount(); i++){
             DataEvent event = dataEvents.get(i);
 
             if(event.getType() == DataEvent.TYPE_CHANGED && event.getDataItem().getUri().getPath().equals(WATCH_FACE_SYNC_REQUEST)) {
-                SunshineSyncAdapter.syncImmediately(getApplicationContext());
+                syncRequested = true;
             }
         }
+
+        if (syncRequested && shouldAnswer()) {
+            answerSyncRequest(getApplicationContext());
+        }
+    }
+
+    private static synchronized boolean shouldAnswer() {
+        long now = SystemClock.elapsedRealtime();
+        if (now - sLastAnsweredMillis < REQUEST_COLLAPSE_MS) {
+            Log.d(LOG_TAG, "Ignoring a watch sync request that follows one we just answered");
+            return false;
+        }
+        sLastAnsweredMillis = now;
+        return true;
+    }
+
+    private static void answerSyncRequest(Context context) {
+        long maxAgeMillis = context.getResources()
+                .getInteger(R.integer.wearable_max_forecast_age_minutes) * 60L * 1000L;
+        long ageMillis = System.currentTimeMillis() - SunshineSyncAdapter.getLastSyncMillis(context);
+
+        // The watch only asks when it's missing something, so send everything again, marked so
+        // it hears about the items it already has too.
+        boolean published = WearableForecastPublisher.publish(context, true);
+        if (!published || ageMillis > maxAgeMillis || ageMillis < 0) {
+            // The sync sends the watch the new forecast itself if anything changed.
+            Log.d(LOG_TAG, "Stored forecast is " + (published ? "stale" : "missing")
+                    + ", starting a sync for the watch");
+            SunshineSyncAdapter.syncImmediately(context);
+        }
     }
 }
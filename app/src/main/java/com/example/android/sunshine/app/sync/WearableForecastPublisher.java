@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastSnapshotCache;
+import com.google.android.gms.wearable.Asset;
+import com.google.android.gms.wearable.DataMap;
+import com.google.android.gms.wearable.PutDataMapRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * Sends the stored forecast for the preferred location to the watch face.  Used by the sync
+ * adapter after every successful sync, by WearablePublishIntentService when the units or art
+ * pack change, and by SunshineWatchFaceListenerService to answer the watch's requests without
+ * going to the network.
+ *
+ * Each day is its own small data item under DAY_PATH_PREFIX, and a header item at
+ * WEATHER_DATA_PATH lists the current days and carries any custom art.  Every item has a
+ * content hash, and we remember the hash of each item once the transport has delivered it, so
+ * only the items whose values changed, or that never got across, are sent again.  When the forecast rolls over to a new day only the header and the
+ * new day go across, and the item for the day that dropped out is deleted.
+ */
+public class WearableForecastPublisher {
+    private static final String LOG_TAG = WearableForecastPublisher.class.getSimpleName();
+
+    public static final String WEATHER_DATA_PATH = "/SunshineWearableListenerService/WeatherData";
+    // One data item per day under this, named by the day's normalized date.
+    public static final String DAY_PATH_PREFIX = WEATHER_DATA_PATH + "/day/";
+
+    // Bumped whenever the meaning of a key changes; the watch ignores versions it doesn't know.
+    public static final int PAYLOAD_VERSION = 2;
+
+    public static final String KEY_VERSION = "version";
+    public static final String KEY_HASH = "hash";
+    // Only on a resend, and not part of the hash: makes every item differ from the one the
+    // watch already has, since the Data Layer doesn't tell the watch about an unchanged put.
+    public static final String KEY_NONCE = "nonce";
+    // Header: the normalized dates of the current days, as a long array, and custom art.
+    public static final String KEY_DATES = "dates";
+    public static final String KEY_WEATHER_ICON = "weatherIcon";
+    // Day items
+    public static final String KEY_DATE = "date";
+    public static final String KEY_WEATHER_ID = "weatherId";
+    public static final String KEY_HIGH = "high";
+    public static final String KEY_LOW = "low";
+
+    // How many days of forecast, starting today, the watch is sent.
+    private static final int WEARABLE_FORECAST_DAYS = 5;
+
+    // data item path -> hash of what was last delivered for it
+    private static final String PREFS_NAME = "wearable_payload";
+
+    private WearableForecastPublisher() {
+    }
+
+    /**
+     * Queues whatever changed in the stored forecast since it was last sent.
+     *
+     * @see #publish(Context, boolean)
+     */
+    public static boolean publish(Context context) {
+        return publish(context, false);
+    }
+
+    /**
+     * Queues the stored forecast to be sent to the watch.  May block while custom art is
+     * fetched, so don't call it on the main thread.
+     *
+     * @param resend send every item, even those whose hash matches what we last sent, with a
+     *               new nonce so the watch hears about each of them again
+     * @return false if there's no forecast stored for today, so nothing was sent.
+     */
+    public static synchronized boolean publish(Context context, boolean resend) {
+        final String preferredLocation = Utility.getPreferredLocation(context);
+        final ForecastSnapshotCache.Snapshot snapshot =
+                ForecastSnapshotCache.get(context, preferredLocation);
+        final ForecastSnapshotCache.Day today = snapshot.getDay(System.currentTimeMillis());
+
+        if(null == today){
+            return false;
+        }
+
+        WearableTransport transport = WearableTransport.getInstance(context);
+        SharedPreferences sentHashes = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        int sentCount = 0;
+        long nonce = System.currentTimeMillis();
+
+        int todayIndex = snapshot.days.indexOf(today);
+        int dayCount = Math.min(snapshot.days.size(), todayIndex + WEARABLE_FORECAST_DAYS);
+        long[] dates = new long[dayCount - todayIndex];
+        HashSet<String> dayPaths = new HashSet<String>();
+        int headerHash = PAYLOAD_VERSION;
+        for (int i = todayIndex; i < dayCount; i++) {
+            ForecastSnapshotCache.Day day = snapshot.days.get(i);
+            int high = toWearableTemperature(context, day.high);
+            int low = toWearableTemperature(context, day.low);
+            int hash = Arrays.hashCode(new long[] { PAYLOAD_VERSION, day.date, day.weatherId, high, low });
+
+            String path = DAY_PATH_PREFIX + day.date;
+            dates[i - todayIndex] = day.date;
+            dayPaths.add(path);
+            headerHash = 31 * headerHash + hash;
+
+            if (resend || !isSent(sentHashes, path, hash)) {
+                PutDataMapRequest dayRequest = PutDataMapRequest.create(path);
+                DataMap dayMap = dayRequest.getDataMap();
+                dayMap.putInt(KEY_VERSION, PAYLOAD_VERSION);
+                dayMap.putInt(KEY_HASH, hash);
+                dayMap.putLong(KEY_DATE, day.date);
+                dayMap.putInt(KEY_WEATHER_ID, day.weatherId);
+                dayMap.putInt(KEY_HIGH, high);
+                dayMap.putInt(KEY_LOW, low);
+                if (resend) {
+                    dayMap.putLong(KEY_NONCE, nonce);
+                }
+                transport.enqueue(dayRequest.asPutDataRequest(), recordOnDelivery(sentHashes, hash));
+                sentCount++;
+            }
+        }
+
+        // Days that have dropped out of the forecast
+        for (String path : sentHashes.getAll().keySet()) {
+            if (path.startsWith(DAY_PATH_PREFIX) && !dayPaths.contains(path)) {
+                transport.enqueueDelete(path, recordOnDelivery(sentHashes, null));
+            }
+        }
+
+        // The watch has the Sunshine art built in and picks it from the weather id.  Only a
+        // custom art pack has to be fetched here and sent across as an image.
+        String artUrl = Utility.usingLocalGraphics(context) ? null
+                : Utility.getArtUrlForWeatherCondition(context, today.weatherId);
+        headerHash = 31 * headerHash + (artUrl != null ? artUrl.hashCode() : 0);
+
+        if (resend || !isSent(sentHashes, WEATHER_DATA_PATH, headerHash)) {
+            PutDataMapRequest weatherUpdateRequest = PutDataMapRequest.create(WEATHER_DATA_PATH);
+            weatherUpdateRequest.getDataMap().putInt(KEY_VERSION, PAYLOAD_VERSION);
+            weatherUpdateRequest.getDataMap().putInt(KEY_HASH, headerHash);
+            weatherUpdateRequest.getDataMap().putLongArray(KEY_DATES, dates);
+            if (resend) {
+                weatherUpdateRequest.getDataMap().putLong(KEY_NONCE, nonce);
+            }
+            if (artUrl != null) {
+                putCustomArt(context, weatherUpdateRequest.getDataMap(), artUrl, today.weatherId);
+            }
+            transport.enqueue(weatherUpdateRequest.asPutDataRequest(),
+                    recordOnDelivery(sentHashes, headerHash));
+            sentCount++;
+        }
+
+        Log.d(LOG_TAG, "Queued " + sentCount + " of " + (dates.length + 1) + " wearable data items");
+        return true;
+    }
+
+    // Records the hash of what the watch now has, or forgets the path if hash is null, once the
+    // transport has delivered it.  A request that is dropped leaves the old hash in place.
+    private static WearableTransport.Callback recordOnDelivery(final SharedPreferences sentHashes,
+                                                               final Integer hash) {
+        return new WearableTransport.Callback() {
+            @Override
+            public void onDelivered(String path) {
+                if (hash != null) {
+                    sentHashes.edit().putInt(path, hash).apply();
+                } else {
+                    sentHashes.edit().remove(path).apply();
+                }
+            }
+        };
+    }
+
+    private static boolean isSent(SharedPreferences sentHashes, String path, int hash) {
+        return sentHashes.contains(path) && sentHashes.getInt(path, 0) == hash;
+    }
+
+    private static void putCustomArt(Context context, DataMap dataMap, String artUrl, int weatherId) {
+        final ByteArrayOutputStream imageBytes = new ByteArrayOutputStream();
+        int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
+        int size = context.getResources().getDimensionPixelSize(R.dimen.wearable_large_icon_default);
+
+        try {
+            Bitmap weatherIcon = Glide.with(context)
+                            .load(artUrl)
+                            .asBitmap()
+                            .error(artResourceId)
+                            .fitCenter()
+                            .into(size, size)
+                            .get();
+
+            weatherIcon.compress(Bitmap.CompressFormat.PNG, 100, imageBytes);
+            Asset weatherIconAsset = Asset.createFromBytes(imageBytes.toByteArray());
+            dataMap.putAsset(KEY_WEATHER_ICON, weatherIconAsset);
+        } catch(Exception ex){
+            Log.e(LOG_TAG, "Failed to fetch custom art for the wearable");
+        }
+    }
+
+    // The watch shows whole degrees in the units the user picked.
+    private static int toWearableTemperature(Context context, double temperature) {
+        return Utility.isMetric(context) ? (int)temperature : (int)((temperature * 1.8) + 32);
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.app.IntentService;
+import android.content.Intent;
+
+/**
+ * IntentService which sends the watch the stored forecast again after a setting that changes
+ * what it shows, like the units or the art pack.  Only the items that now differ go across.
+ */
+public class WearablePublishIntentService extends IntentService {
+    public WearablePublishIntentService() {
+        super("WearablePublishIntentService");
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        WearableForecastPublisher.publish(this);
+    }
+}
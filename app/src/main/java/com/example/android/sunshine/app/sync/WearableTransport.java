@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.Status;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The app's one connection to the Wearable Data Layer.  Callers queue {@link PutDataRequest}s
+ * from any thread and return straight away; a background thread connects a single shared
+ * {@link GoogleApiClient} (blocking, with a timeout), pushes everything queued in one batch, and
+ * keeps the client connected for the next batch until it has been idle for a while.
+ *
+ * Only the newest request for each data item path is kept, since the Data Layer would replace
+ * the older one anyway.  Data items can be deleted through the same queue.  A request that
+ * can't be sent is retried a few times, on its own count and schedule, before it is dropped,
+ * and every connect, push and failure is counted.  A caller that needs to know what reached the
+ * Data Layer can pass a {@link Callback}.
+ */
+public class WearableTransport {
+    private static final String LOG_TAG = WearableTransport.class.getSimpleName();
+
+    private static final long CONNECT_TIMEOUT_SECONDS = 15;
+    private static final long PUSH_TIMEOUT_SECONDS = 15;
+
+    // How long to wait for more requests before pushing a batch.
+    private static final long FLUSH_DELAY_MS = 500;
+    private static final long RETRY_DELAY_MS = 30 * 1000;
+    private static final int MAX_FLUSH_ATTEMPTS = 3;
+    private static final long IDLE_DISCONNECT_MS = 5 * 60 * 1000;
+
+    private static final int MSG_FLUSH = 0;
+    private static final int MSG_DISCONNECT = 1;
+
+    private static WearableTransport sInstance;
+
+    private final GoogleApiClient mGoogleApiClient;
+    // Held while connecting, disconnecting or using the client outside the transport thread.
+    private final Object mClientLock = new Object();
+    private final Handler mHandler;
+
+    /**
+     * Told when a queued request has been put, or its item deleted.  Not called for a request
+     * that is replaced by a newer one for the same path, or dropped after failing.  Runs on the
+     * transport thread.
+     */
+    public interface Callback {
+        void onDelivered(String path);
+    }
+
+    /**
+     * A queued request, and how often it has failed.
+     */
+    private static final class Pending {
+        // Null to delete the item.
+        final PutDataRequest request;
+        final Callback callback;
+        final int attempts;
+        // elapsedRealtime before which a failed request isn't tried again.
+        final long retryAtMillis;
+
+        Pending(PutDataRequest request, Callback callback, int attempts, long retryAtMillis) {
+            this.request = request;
+            this.callback = callback;
+            this.attempts = attempts;
+            this.retryAtMillis = retryAtMillis;
+        }
+    }
+
+    // data item path -> newest request for it.  Guarded by this.
+    private final LinkedHashMap<String, Pending> mPending = new LinkedHashMap<String, Pending>();
+
+    private final AtomicInteger mConnectCount = new AtomicInteger();
+    private final AtomicInteger mConnectFailureCount = new AtomicInteger();
+    private final AtomicInteger mPushCount = new AtomicInteger();
+    private final AtomicInteger mPushFailureCount = new AtomicInteger();
+    private final AtomicInteger mDroppedCount = new AtomicInteger();
+
+    public static synchronized WearableTransport getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WearableTransport(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private WearableTransport(Context context) {
+        mGoogleApiClient = new GoogleApiClient.Builder(context)
+                .addApi(Wearable.API)
+                .build();
+        HandlerThread thread = new HandlerThread(LOG_TAG);
+        thread.start();
+        mHandler = new Handler(thread.getLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                switch (msg.what) {
+                    case MSG_FLUSH:
+                        flush();
+                        break;
+                    case MSG_DISCONNECT:
+                        synchronized (mClientLock) {
+                            mGoogleApiClient.disconnect();
+                        }
+                        break;
+                }
+            }
+        };
+    }
+
+    /**
+     * Queues a request to be pushed with the next batch, replacing any queued request for the
+     * same path.
+     */
+    public void enqueue(PutDataRequest request) {
+        enqueue(request, null);
+    }
+
+    /**
+     * Like {@link #enqueue(PutDataRequest)}, and tells callback once the request is put.
+     */
+    public void enqueue(PutDataRequest request, Callback callback) {
+        enqueue(request.getUri().getPath(), request, callback);
+    }
+
+    /**
+     * Queues the deletion of the data item at a path, replacing any queued request for it.
+     */
+    public void enqueueDelete(String path) {
+        enqueueDelete(path, null);
+    }
+
+    /**
+     * Like {@link #enqueueDelete(String)}, and tells callback once the item is deleted.
+     */
+    public void enqueueDelete(String path, Callback callback) {
+        enqueue(path, null, callback);
+    }
+
+    private void enqueue(String path, PutDataRequest request, Callback callback) {
+        synchronized (this) {
+            // A new request for the path starts with a clean slate; the others keep their counts.
+            mPending.put(path, new Pending(request, callback, 0, 0));
+        }
+        // Replaces a pending retry, which would make this request wait much longer.
+        mHandler.removeMessages(MSG_FLUSH);
+        mHandler.sendEmptyMessageDelayed(MSG_FLUSH, FLUSH_DELAY_MS);
+    }
+
+    public int getConnectCount() {
+        return mConnectCount.get();
+    }
+
+    public int getConnectFailureCount() {
+        return mConnectFailureCount.get();
+    }
+
+    public int getPushCount() {
+        return mPushCount.get();
+    }
+
+    public int getPushFailureCount() {
+        return mPushFailureCount.get();
+    }
+
+    public int getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    // Runs on the transport thread.
+    private void flush() {
+        mHandler.removeMessages(MSG_DISCONNECT);
+        long now = SystemClock.elapsedRealtime();
+        LinkedHashMap<String, Pending> batch = new LinkedHashMap<String, Pending>();
+        synchronized (this) {
+            // Failed requests wait out their retry delay, even if something new is sent sooner.
+            Iterator<Map.Entry<String, Pending>> it = mPending.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Pending> entry = it.next();
+                if (entry.getValue().retryAtMillis <= now) {
+                    batch.put(entry.getKey(), entry.getValue());
+                    it.remove();
+                }
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            LinkedHashMap<String, Pending> failed = new LinkedHashMap<String, Pending>();
+            synchronized (mClientLock) {
+                if (connect()) {
+                    for (Map.Entry<String, Pending> entry : batch.entrySet()) {
+                        if (!push(entry.getKey(), entry.getValue().request)) {
+                            failed.put(entry.getKey(), entry.getValue());
+                        }
+                    }
+                } else {
+                    failed.putAll(batch);
+                }
+            }
+
+            for (Map.Entry<String, Pending> entry : batch.entrySet()) {
+                Callback callback = entry.getValue().callback;
+                if (callback != null && !failed.containsKey(entry.getKey())) {
+                    callback.onDelivered(entry.getKey());
+                }
+            }
+
+            synchronized (this) {
+                int dropped = 0;
+                for (Map.Entry<String, Pending> entry : failed.entrySet()) {
+                    Pending pending = entry.getValue();
+                    if (pending.attempts + 1 >= MAX_FLUSH_ATTEMPTS) {
+                        dropped++;
+                    } else if (!mPending.containsKey(entry.getKey())) {
+                        // Requests queued since the batch was taken are newer, so they win.
+                        mPending.put(entry.getKey(), new Pending(pending.request, pending.callback,
+                                pending.attempts + 1, now + RETRY_DELAY_MS));
+                    }
+                }
+                if (dropped > 0) {
+                    mDroppedCount.addAndGet(dropped);
+                    Log.w(LOG_TAG, "Dropping " + dropped + " requests after "
+                            + MAX_FLUSH_ATTEMPTS + " attempts");
+                }
+            }
+            Log.d(LOG_TAG, "Pushed batch of " + batch.size() + ". Connects " + mConnectCount
+                    + " (" + mConnectFailureCount + " failed), pushes " + mPushCount
+                    + " (" + mPushFailureCount + " failed), dropped " + mDroppedCount);
+        }
+
+        scheduleRetry();
+        mHandler.sendEmptyMessageDelayed(MSG_DISCONNECT, IDLE_DISCONNECT_MS);
+    }
+
+    // Schedules a flush for the earliest request still waiting to be retried.  Runs on the
+    // transport thread.
+    private void scheduleRetry() {
+        long retryAtMillis = Long.MAX_VALUE;
+        synchronized (this) {
+            for (Pending pending : mPending.values()) {
+                retryAtMillis = Math.min(retryAtMillis, pending.retryAtMillis);
+            }
+        }
+        if (retryAtMillis != Long.MAX_VALUE && !mHandler.hasMessages(MSG_FLUSH)) {
+            long delay = Math.max(retryAtMillis - SystemClock.elapsedRealtime(), FLUSH_DELAY_MS);
+            mHandler.sendEmptyMessageDelayed(MSG_FLUSH, delay);
+        }
+    }
+
+    // Puts the request, or deletes the item at path if it's null.  Must be called with
+    // mClientLock held and the client connected.
+    private boolean push(String path, PutDataRequest request) {
+        Status status;
+        if (request != null) {
+            status = Wearable.DataApi.putDataItem(mGoogleApiClient, request)
+                    .await(PUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS).getStatus();
+        } else {
+            Uri uri = new Uri.Builder().scheme(PutDataRequest.WEAR_URI_SCHEME).path(path).build();
+            status = Wearable.DataApi.deleteDataItems(mGoogleApiClient, uri)
+                    .await(PUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS).getStatus();
+        }
+        if (status.isSuccess()) {
+            mPushCount.incrementAndGet();
+            return true;
+        }
+        mPushFailureCount.incrementAndGet();
+        Log.w(LOG_TAG, "Failed to " + (request != null ? "push " : "delete ") + path + ": " + status);
+        return false;
+    }
+
+    // Must be called with mClientLock held.
+    private boolean connect() {
+        if (mGoogleApiClient.isConnected()) {
+            return true;
+        }
+        ConnectionResult result =
+                mGoogleApiClient.blockingConnect(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (result.isSuccess()) {
+            mConnectCount.incrementAndGet();
+            return true;
+        }
+        mConnectFailureCount.incrementAndGet();
+        Log.w(LOG_TAG, "Failed to connect to the wearable API: " + result);
+        return false;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.gms.wearable.Asset;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Turns the custom art the handheld sends into the watch face's weather icon, on a thread of its
+ * own.  The asset is read over the shared Data Layer connection with a timeout, downsampled
+ * while decoding to about R.dimen.weather_icon_size, decoded into a reused buffer and scaled to
+ * the exact size.  The icon is handed to the watch face on the main thread, where the engine
+ * reads it, and only if no newer art was queued in the meantime.  Decode times are logged and
+ * counted.
+ */
+public class AssetDecoder {
+    private static final String LOG_TAG = AssetDecoder.class.getSimpleName();
+
+    private static AssetDecoder sInstance;
+
+    private final Context context;
+    private final Handler decodeHandler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // The latest request; results of older ones are dropped.
+    private final AtomicInteger latestRequest = new AtomicInteger();
+
+    // The last full decode, reused for the next one with inBitmap.  Decode thread only.
+    private Bitmap reusableBitmap;
+
+    private final AtomicInteger decodeCount = new AtomicInteger();
+    private final AtomicInteger failureCount = new AtomicInteger();
+    private final AtomicLong totalDecodeMillis = new AtomicLong();
+
+    public static synchronized AssetDecoder getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new AssetDecoder(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private AssetDecoder(Context context) {
+        this.context = context;
+        HandlerThread thread = new HandlerThread(LOG_TAG);
+        thread.start();
+        decodeHandler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Queues the asset to be decoded and shown as the icon for a condition.
+     */
+    public void decode(final Asset asset, final int weatherId) {
+        final int request = latestRequest.incrementAndGet();
+        decodeHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (request != latestRequest.get()) {
+                    return;
+                }
+                final Bitmap icon = decodeIcon(asset);
+                if (icon == null) {
+                    failureCount.incrementAndGet();
+                    return;
+                }
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (request != latestRequest.get()) {
+                            return;
+                        }
+                        SunshineWatchFace.currentConditionsImage = icon;
+                        SunshineWatchFace.currentWeatherId = weatherId;
+                        SunshineWatchFace.updateWatchFace();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Drops any queued or running decode, so its art is never shown.
+     */
+    public void cancel() {
+        latestRequest.incrementAndGet();
+    }
+
+    public int getDecodeCount() {
+        return decodeCount.get();
+    }
+
+    public int getFailureCount() {
+        return failureCount.get();
+    }
+
+    public long getAverageDecodeMillis() {
+        int count = decodeCount.get();
+        return count == 0 ? 0 : totalDecodeMillis.get() / count;
+    }
+
+    // Runs on the decode thread.
+    private Bitmap decodeIcon(Asset asset) {
+        long startMillis = SystemClock.elapsedRealtime();
+        byte[] bytes = readAsset(asset);
+        if (bytes == null) {
+            return null;
+        }
+        long readMillis = SystemClock.elapsedRealtime() - startMillis;
+
+        int size = context.getResources().getDimensionPixelSize(R.dimen.weather_icon_size);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            Log.w(LOG_TAG, "Asset isn't an image we can decode");
+            return null;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, size);
+        options.inMutable = true;
+        options.inBitmap = reusableBitmap;
+        Bitmap decoded;
+        try {
+            decoded = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        } catch (IllegalArgumentException e) {
+            // The buffer is too small for this image; decode into a new one.
+            options.inBitmap = null;
+            decoded = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        }
+        if (decoded == null) {
+            return null;
+        }
+        reusableBitmap = decoded;
+
+        // The buffer is reused by the next decode, so the icon must always be a copy of it.
+        Bitmap icon = Bitmap.createScaledBitmap(decoded, size, size, true);
+        if (icon == decoded) {
+            icon = decoded.copy(Bitmap.Config.ARGB_8888, false);
+        }
+
+        long decodeMillis = SystemClock.elapsedRealtime() - startMillis;
+        decodeCount.incrementAndGet();
+        totalDecodeMillis.addAndGet(decodeMillis);
+        Log.d(LOG_TAG, "Decoded " + options.outWidth + "x" + options.outHeight + " art at 1/"
+                + options.inSampleSize + " in " + decodeMillis + " ms (" + readMillis
+                + " ms reading), average " + getAverageDecodeMillis() + " ms");
+        return icon;
+    }
+
+    private byte[] readAsset(Asset asset) {
+        InputStream in = WearableTransport.getInstance(context).openAsset(asset);
+        if (in == null) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Failed to read asset", e);
+            return null;
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Nothing more to do.
+            }
+        }
+    }
+
+    // The largest power of two that keeps both sides at least targetSize.
+    static int calculateInSampleSize(int width, int height, int targetSize) {
+        int inSampleSize = 1;
+        while (width / (inSampleSize * 2) >= targetSize && height / (inSampleSize * 2) >= targetSize) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.text.format.Time;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+/**
+ * The last few days of forecast the handheld sent us, kept in a small file so the watch face can
+ * show the weather as soon as it starts, and keep showing the right day while the phone is out
+ * of reach.  The handheld sends every change as it happens, so the face only asks it for a sync
+ * when there's nothing stored for today.
+ */
+public class ForecastStore {
+    private static final String LOG_TAG = ForecastStore.class.getSimpleName();
+
+    private static final String FILE_NAME = "forecast.dat";
+    private static final int FILE_VERSION = 1;
+
+    // The most days we keep; anything the handheld sends past this is dropped.
+    public static final int MAX_DAYS = 7;
+
+    /**
+     * One day of stored forecast.  Temperatures are already in the units the user picked.
+     */
+    public static final class Day {
+        public final int julianDay;
+        public final int weatherId;
+        public final int high;
+        public final int low;
+
+        public Day(int julianDay, int weatherId, int high, int low) {
+            this.julianDay = julianDay;
+            this.weatherId = weatherId;
+            this.high = high;
+            this.low = low;
+        }
+    }
+
+    private static ForecastStore sInstance;
+
+    private final AtomicFile file;
+
+    // Guarded by this.
+    private List<Day> days = Collections.emptyList();
+    private long receivedAt;
+
+    public static synchronized ForecastStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ForecastStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ForecastStore(Context context) {
+        file = new AtomicFile(context.getFileStreamPath(FILE_NAME));
+        load();
+    }
+
+    /**
+     * @return the julian day, in the watch's time zone, that a time falls on.
+     */
+    public static int getJulianDay(long timeMillis) {
+        long gmtOffSeconds = TimeZone.getDefault().getOffset(timeMillis) / 1000;
+        return Time.getJulianDay(timeMillis, gmtOffSeconds);
+    }
+
+    /**
+     * Merges days the handheld sent into the stored forecast and writes it out.  Days before
+     * today are dropped, and only the first MAX_DAYS are kept.
+     *
+     * @param changedDays days to add or replace
+     * @param currentDays the julian days the handheld's forecast now covers; stored days that
+     *                    aren't among them are dropped.  Null to keep them all.
+     * @param receivedAt when the update arrived
+     */
+    public synchronized void update(List<Day> changedDays, int[] currentDays, long receivedAt) {
+        TreeMap<Integer, Day> merged = new TreeMap<Integer, Day>();
+        for (Day day : days) {
+            merged.put(day.julianDay, day);
+        }
+        for (Day day : changedDays) {
+            merged.put(day.julianDay, day);
+        }
+        if (currentDays != null) {
+            HashSet<Integer> current = new HashSet<Integer>();
+            for (int julianDay : currentDays) {
+                current.add(julianDay);
+            }
+            merged.keySet().retainAll(current);
+        }
+
+        int today = getJulianDay(receivedAt);
+        ArrayList<Day> kept = new ArrayList<Day>();
+        for (Day day : merged.tailMap(today).values()) {
+            if (kept.size() == MAX_DAYS) {
+                break;
+            }
+            kept.add(day);
+        }
+
+        this.days = Collections.unmodifiableList(kept);
+        this.receivedAt = receivedAt;
+        save();
+    }
+
+    /**
+     * @return the stored forecast for the day a time falls on, or null if we don't have it.
+     */
+    public synchronized Day getDay(long timeMillis) {
+        int julianDay = getJulianDay(timeMillis);
+        for (Day day : days) {
+            if (day.julianDay == julianDay) {
+                return day;
+            }
+        }
+        return null;
+    }
+
+    public synchronized long getReceivedAt() {
+        return receivedAt;
+    }
+
+    /**
+     * @return true if we have nothing for the day {@code now} falls on.
+     */
+    public synchronized boolean isStale(long now) {
+        return getDay(now) == null;
+    }
+
+    // Must be called with this held.
+    private void save() {
+        FileOutputStream stream = null;
+        try {
+            stream = file.startWrite();
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(FILE_VERSION);
+            out.writeLong(receivedAt);
+            out.writeInt(days.size());
+            for (Day day : days) {
+                out.writeInt(day.julianDay);
+                out.writeInt(day.weatherId);
+                out.writeInt(day.high);
+                out.writeInt(day.low);
+            }
+            out.flush();
+            file.finishWrite(stream);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Failed to save the forecast", e);
+            if (stream != null) {
+                file.failWrite(stream);
+            }
+        }
+    }
+
+    private synchronized void load() {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(file.openRead());
+            if (in.readInt() != FILE_VERSION) {
+                return;
+            }
+            long storedReceivedAt = in.readLong();
+            int count = Math.min(in.readInt(), MAX_DAYS);
+            ArrayList<Day> storedDays = new ArrayList<Day>(count);
+            for (int i = 0; i < count; i++) {
+                storedDays.add(new Day(in.readInt(), in.readInt(), in.readInt(), in.readInt()));
+            }
+            days = Collections.unmodifiableList(storedDays);
+            receivedAt = storedReceivedAt;
+        } catch (FileNotFoundException e) {
+            // Nothing stored yet.
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Failed to load the stored forecast", e);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Nothing more to do.
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Counts how long the watch face takes to draw its frames and how many objects it allocates
+ * while doing so.  Only debug builds count anything; in release builds every call returns
+ * straight away.  The totals are logged every LOG_INTERVAL_FRAMES frames.  The watch face keeps
+ * one per kind of frame, so ambient and interactive costs can be compared.
+ *
+ * Allocation counting is switched on for the whole process, so it stays on while any
+ * FrameStats that hasn't been stopped is around.
+ */
+// The Debug allocation counters are deprecated, but they are still the cheapest way to count
+// allocations per frame on the watch.
+@SuppressWarnings("deprecation")
+public class FrameStats {
+    private static final String LOG_TAG = FrameStats.class.getSimpleName();
+
+    private static final int LOG_INTERVAL_FRAMES = 60;
+
+    // FrameStats that are counting allocations.  Guarded by the class.
+    private static int sCountingInstances;
+
+    private final boolean enabled = BuildConfig.DEBUG;
+    private final String name;
+
+    private long frameStartNanos;
+    private int frameStartAllocations;
+
+    private int frameCount;
+    private long totalFrameNanos;
+    private long maxFrameNanos;
+    private long totalAllocations;
+    private int maxAllocations;
+    private int layerRebuildCount;
+    private boolean stopped;
+
+    /**
+     * @param name what kind of frames these are, for the log
+     */
+    public FrameStats(String name) {
+        this.name = name;
+        if (enabled) {
+            startAllocCounting();
+        }
+    }
+
+    private static synchronized void startAllocCounting() {
+        if (sCountingInstances++ == 0) {
+            Debug.startAllocCounting();
+        }
+    }
+
+    private static synchronized void stopAllocCounting() {
+        if (--sCountingInstances == 0) {
+            Debug.stopAllocCounting();
+        }
+    }
+
+    public void beginFrame() {
+        if (!enabled) {
+            return;
+        }
+        frameStartAllocations = Debug.getThreadAllocCount();
+        frameStartNanos = SystemClock.elapsedRealtimeNanos();
+    }
+
+    public void endFrame() {
+        if (!enabled) {
+            return;
+        }
+        long frameNanos = SystemClock.elapsedRealtimeNanos() - frameStartNanos;
+        int allocations = Debug.getThreadAllocCount() - frameStartAllocations;
+
+        frameCount++;
+        totalFrameNanos += frameNanos;
+        maxFrameNanos = Math.max(maxFrameNanos, frameNanos);
+        totalAllocations += allocations;
+        maxAllocations = Math.max(maxAllocations, allocations);
+
+        if (frameCount % LOG_INTERVAL_FRAMES == 0) {
+            Log.d(LOG_TAG, name + " frames " + frameCount + ", average " + getAverageFrameMicros()
+                    + " us (max " + maxFrameNanos / 1000 + " us), allocations " + totalAllocations
+                    + " (max " + maxAllocations + " in one frame), layer rebuilds "
+                    + layerRebuildCount);
+        }
+    }
+
+    /**
+     * Counts a frame that had to redraw the watch face's cached layer.
+     */
+    public void layerRebuilt() {
+        if (enabled) {
+            layerRebuildCount++;
+        }
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public long getAverageFrameMicros() {
+        return frameCount == 0 ? 0 : totalFrameNanos / frameCount / 1000;
+    }
+
+    public long getMaxFrameMicros() {
+        return maxFrameNanos / 1000;
+    }
+
+    public long getTotalAllocations() {
+        return totalAllocations;
+    }
+
+    public int getMaxFrameAllocations() {
+        return maxAllocations;
+    }
+
+    public int getLayerRebuildCount() {
+        return layerRebuildCount;
+    }
+
+    /**
+     * Stops counting allocations, once every other FrameStats has stopped too.  Only the first
+     * call does anything.
+     */
+    public void stop() {
+        if (enabled && !stopped) {
+            stopped = true;
+            stopAllocCounting();
+        }
+    }
+}
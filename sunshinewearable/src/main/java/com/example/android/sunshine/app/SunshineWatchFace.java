@@ -29,19 +29,16 @@ import android.graphics.Rect;
 import android.graphics.Typeface;
 import android.os.Bundle;
 import android.os.Handler;
-import android.os.Message;
+import android.os.Looper;
 import android.support.v4.content.ContextCompat;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
 import android.view.SurfaceHolder;
 import android.view.WindowInsets;
 
-import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.PutDataRequest;
-import com.google.android.gms.wearable.Wearable;
 
-import java.lang.ref.WeakReference;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.Locale;
@@ -55,23 +52,79 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
     private static final Typeface HIGH_TEMP_TYPEFACE = Typeface.create("sans-serif", Typeface.NORMAL);
     private static final Typeface LOW_TEMP_TYPEFACE = Typeface.create("sans-serif-light", Typeface.NORMAL);
 
-    private static final long INTERACTIVE_UPDATE_RATE_MS = 60000;
+    // "00" to "59", so the seconds display never formats anything while drawing.
+    private static final String[] SECONDS_TEXT = new String[60];
+    static {
+        for (int i = 0; i < SECONDS_TEXT.length; i++) {
+            SECONDS_TEXT[i] = String.format(Locale.US, "%02d", i);
+        }
+    }
 
-    private static final int MSG_UPDATE_TIME = 0;
+    // Don't ask the handheld for a sync more often than this while the stored forecast is stale.
+    private static final long REFRESH_REQUEST_INTERVAL_MS = 15 * 60 * 1000;
 
+    // The engine draws from these on the main thread, so they're only changed there.
     static Bitmap currentConditionsImage;
+    // The condition currentConditionsImage shows, or -1 if there isn't one.
+    static int currentWeatherId = -1;
 
     static int highTemp = Integer.MIN_VALUE;
     static int lowTemp = Integer.MIN_VALUE;
 
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private static long lastRefreshRequestMillis;
+
     private static Engine engineInstance;
 
     public static void updateWatchFace() {
-        if(engineInstance != null){
+        // In ambient mode the next time tick picks the change up.
+        if(engineInstance != null && !engineInstance.isInAmbientMode()){
             engineInstance.invalidate();
         }
     }
 
+    /**
+     * Shows the stored forecast for today, keeping the current image if it's already for the
+     * right condition (it may be custom art the handheld sent).
+     */
+    static void showStoredForecast(Context context) {
+        ForecastStore.Day today = ForecastStore.getInstance(context)
+                .getDay(System.currentTimeMillis());
+        if (today == null) {
+            highTemp = Integer.MIN_VALUE;
+            lowTemp = Integer.MIN_VALUE;
+            currentConditionsImage = null;
+            currentWeatherId = -1;
+            return;
+        }
+
+        highTemp = today.high;
+        lowTemp = today.low;
+        if (today.weatherId != currentWeatherId || currentConditionsImage == null) {
+            currentConditionsImage = WeatherIcons.getIcon(context, today.weatherId);
+            currentWeatherId = today.weatherId;
+        }
+    }
+
+    /**
+     * Shows the stored forecast and redraws, from any thread.
+     *
+     * @param resetArt drop the current image, even custom art, for our own art for today
+     */
+    static void postStoredForecast(final Context context, final boolean resetArt) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (resetArt) {
+                    currentWeatherId = -1;
+                }
+                showStoredForecast(context);
+                updateWatchFace();
+            }
+        });
+    }
+
     @Override
     public Engine onCreateEngine() {
         return new Engine();
@@ -80,12 +133,22 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
 
     private class Engine extends CanvasWatchFaceService.Engine {
 
-        final Handler engineUpdateHandler = new EngineHandler(this);
+        final TickScheduler tickScheduler = new TickScheduler(new TickScheduler.Callback() {
+            @Override
+            public boolean onTick(long nowMillis) {
+                return onInteractiveTick(nowMillis);
+            }
+        });
+        boolean showSeconds;
 
         final BroadcastReceiver timeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                currentTime = Calendar.getInstance(TimeZone.getTimeZone(intent.getStringExtra("time-zone")));
+                if (Intent.ACTION_TIMEZONE_CHANGED.equals(intent.getAction())) {
+                    currentTime = Calendar.getInstance(TimeZone.getTimeZone(intent.getStringExtra("time-zone")));
+                }
+                // The time and date text has to be redone for the new zone or locale.
+                resetText();
             }
         };
         boolean registeredTimeZoneReceiver = false;
@@ -104,8 +167,65 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         float dateOffsetY;
         float lineOffsetY;
         float currentWeatherOffsetY;
+        int weatherIconSize;
 
         boolean supportsLowBitAmbient;
+        boolean burnInProtection;
+
+        // Ambient mode only draws the time, in a paint of its own: never anti-aliased on low-bit
+        // screens, and outlined and nudged around by a few pixels each minute on screens that
+        // need burn-in protection.
+        Paint ambientTimePaint;
+        int burnInShiftPx;
+        int ambientShiftStep;
+        float ambientShiftX;
+        float ambientShiftY;
+
+        // The day, as getDay() numbers them, whose stored forecast is on show.
+        int forecastDay = -1;
+
+        // Everything onDraw needs is worked out ahead of time and only redone when what it
+        // depends on changes, so drawing a frame allocates nothing.
+        int layoutWidth = -1;
+        int layoutHeight = -1;
+        float centerX;
+        float lineStartX;
+        float lineEndX;
+        float weatherIconX;
+        float weatherIconY;
+
+        int textMinute = -1;
+        String timeText;
+        float timeX;
+        float timeWidth;
+        // Gap between the time and the seconds drawn after it.
+        float secondsSpacing;
+        int drawnSecond = -1;
+
+        int textDay = -1;
+        String dateText;
+        float dateX;
+
+        int textHighTemp = Integer.MIN_VALUE;
+        int textLowTemp = Integer.MIN_VALUE;
+        String highTempText;
+        String lowTempText;
+        float highTempX;
+        float lowTempX;
+
+        // Everything but the time is drawn into this layer, which is only redrawn when the day,
+        // the weather, the ambient mode or the layout changes.  Most frames are one blit of it
+        // plus the time text.
+        Bitmap staticLayer;
+        Canvas staticLayerCanvas;
+        boolean staticLayerValid;
+        int layerDay = -1;
+        int layerHighTemp = Integer.MIN_VALUE;
+        int layerLowTemp = Integer.MIN_VALUE;
+        Bitmap layerConditionsImage;
+
+        final FrameStats frameStats = new FrameStats("interactive");
+        final FrameStats ambientFrameStats = new FrameStats("ambient");
 
         @Override
         public void onCreate(SurfaceHolder holder) {
@@ -125,6 +245,12 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             dateOffsetY = resources.getDimension(R.dimen.date_y_offset);
             lineOffsetY = resources.getDimension(R.dimen.line_y_offset);
             currentWeatherOffsetY = resources.getDimension(R.dimen.current_weather_y_offset);
+            weatherIconSize = resources.getDimensionPixelSize(R.dimen.weather_icon_size);
+            burnInShiftPx = resources.getDimensionPixelSize(R.dimen.burn_in_shift);
+            secondsSpacing = resources.getDimension(R.dimen.seconds_spacing);
+
+            showSeconds = resources.getBoolean(R.bool.show_seconds);
+            tickScheduler.setMode(showSeconds ? TickScheduler.MODE_SECOND : TickScheduler.MODE_MINUTE);
 
             initializeBackgroundPaint();
             initializeTimePaint();
@@ -132,9 +258,14 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             initializeLinePaint();
             initializeHighTempPaint();
             initializeLowTempPaint();
+            initializeAmbientTimePaint();
 
             currentTime = Calendar.getInstance();
-            notifyHandheld();
+
+            // Show whatever we stored last time straight away, and only bother the handheld if
+            // it's out of date.
+            showStoredForecast(SunshineWatchFace.this);
+            requestRefreshIfStale();
         }
 
         private void initializeBackgroundPaint(){
@@ -179,6 +310,29 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             lowTempPaint.setAntiAlias(true);
         }
 
+        private void requestRefreshIfStale() {
+            long now = System.currentTimeMillis();
+            if (!ForecastStore.getInstance(SunshineWatchFace.this).isStale(now)
+                    || now - lastRefreshRequestMillis < REFRESH_REQUEST_INTERVAL_MS) {
+                return;
+            }
+            lastRefreshRequestMillis = now;
+            notifyHandheld();
+        }
+
+        private void initializeAmbientTimePaint(){
+            ambientTimePaint = new Paint();
+            ambientTimePaint.setColor(Color.WHITE);
+            ambientTimePaint.setTypeface(TIME_TYPEFACE);
+            ambientTimePaint.setStrokeWidth(1);
+            updateAmbientTimePaint();
+        }
+
+        private void updateAmbientTimePaint(){
+            ambientTimePaint.setAntiAlias(!supportsLowBitAmbient);
+            ambientTimePaint.setStyle(burnInProtection ? Paint.Style.STROKE : Paint.Style.FILL);
+        }
+
         private void notifyHandheld(){
             PutDataMapRequest dataSyncRequest = PutDataMapRequest.create("/SunshineWatchFaceListenerService/Sync");
 
@@ -186,23 +340,19 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
 
             PutDataRequest dataPutRequest = dataSyncRequest.asPutDataRequest();
 
-            GoogleApiClient googleApiClient = getGoogleApiClient();
-            googleApiClient.connect();
-
-            Wearable.DataApi.putDataItem(googleApiClient, dataPutRequest);
-            googleApiClient.disconnect();
-        }
-
-        private GoogleApiClient getGoogleApiClient(){
-            return new GoogleApiClient.Builder(getApplicationContext())
-                    .addApi(Wearable.API)
-                    .build();
+            WearableTransport.getInstance(SunshineWatchFace.this).enqueue(dataPutRequest);
         }
 
         @Override
         public void onDestroy() {
-            engineUpdateHandler.removeMessages(MSG_UPDATE_TIME);
+            tickScheduler.stop();
             engineInstance = null;
+            frameStats.stop();
+            ambientFrameStats.stop();
+            if (staticLayer != null) {
+                staticLayer.recycle();
+                staticLayer = null;
+            }
             super.onDestroy();
         }
 
@@ -215,6 +365,8 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                 // Update time zone in case it changed while we weren't visible.
                 currentTime.setTimeZone(TimeZone.getDefault());
                 currentTime.setTime(new Date());
+                resetText();
+                requestRefreshIfStale();
             } else {
                 unregisterReceiver();
             }
@@ -230,6 +382,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             }
             registeredTimeZoneReceiver = true;
             IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+            filter.addAction(Intent.ACTION_LOCALE_CHANGED);
             SunshineWatchFace.this.registerReceiver(timeZoneReceiver, filter);
         }
 
@@ -257,28 +410,46 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             datePaint.setTextSize(dateTextSize);
             highTempPaint.setTextSize(highTempTextSize);
             lowTempPaint.setTextSize(lowTempTextSize);
+            ambientTimePaint.setTextSize(textSize);
+
+            // New text sizes move every centred string.
+            resetText();
         }
 
         @Override
         public void onPropertiesChanged(Bundle properties) {
             super.onPropertiesChanged(properties);
             supportsLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+            burnInProtection = properties.getBoolean(PROPERTY_BURN_IN_PROTECTION, false);
+            updateAmbientTimePaint();
         }
 
         @Override
         public void onTimeTick() {
             super.onTimeTick();
+            if (isInAmbientMode()) {
+                shiftAmbientTime();
+            }
             invalidate();
         }
 
+        // Walks the ambient time around a small square, one step a minute.
+        private void shiftAmbientTime() {
+            if (!burnInProtection) {
+                ambientShiftX = 0;
+                ambientShiftY = 0;
+                return;
+            }
+            ambientShiftStep = (ambientShiftStep + 1) % 4;
+            ambientShiftX = (ambientShiftStep == 1 || ambientShiftStep == 2) ? burnInShiftPx : 0;
+            ambientShiftY = (ambientShiftStep >= 2) ? burnInShiftPx : 0;
+        }
+
         @Override
         public void onAmbientModeChanged(boolean inAmbientMode) {
             super.onAmbientModeChanged(inAmbientMode);
             if (isAmbient != inAmbientMode) {
                 isAmbient = inAmbientMode;
-                if (supportsLowBitAmbient) {
-                    timePaint.setAntiAlias(!inAmbientMode);
-                }
                 invalidate();
             }
 
@@ -289,74 +460,174 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            drawBackground(canvas, bounds);
-
-            drawTime(canvas, bounds);
-            if(!isInAmbientMode()){
-                drawDate(canvas, bounds);
-                drawDividerLine(canvas, bounds);
-                drawWeatherIcon(canvas, bounds);
-                drawHighAndLowTemp(canvas, bounds);
+            boolean ambient = isInAmbientMode();
+            FrameStats stats = ambient ? ambientFrameStats : frameStats;
+            stats.beginFrame();
+
+            if (bounds.width() != layoutWidth || bounds.height() != layoutHeight) {
+                updateLayout(bounds);
             }
-        }
+            currentTime.setTimeInMillis(System.currentTimeMillis());
 
-        private void drawBackground(Canvas canvas, Rect bounds){
-            if (isInAmbientMode()) {
+            int day = getDay();
+            if (day != forecastDay) {
+                if (forecastDay != -1) {
+                    // A new day: move on to its stored forecast, if we have it.
+                    showStoredForecast(SunshineWatchFace.this);
+                    requestRefreshIfStale();
+                }
+                forecastDay = day;
+            }
+
+            if (ambient) {
                 canvas.drawColor(Color.BLACK);
+                drawTime(canvas, ambientTimePaint, ambientShiftX, ambientShiftY);
             } else {
-                canvas.drawRect(0, 0, bounds.width(), bounds.height(), backgroundPaint);
+                if (isStaticLayerStale()) {
+                    drawStaticLayer(bounds);
+                }
+                canvas.drawBitmap(staticLayer, 0, 0, null);
+                drawTime(canvas, timePaint, 0, 0);
+                if (showSeconds) {
+                    drawSeconds(canvas);
+                }
             }
+
+            stats.endFrame();
         }
 
-        private void drawTime(Canvas canvas, Rect bounds){
-            currentTime.setTimeInMillis(System.currentTimeMillis());
-            String timeText = String.format("%d:%02d", currentTime.get(Calendar.HOUR_OF_DAY), currentTime.get(Calendar.MINUTE));
-            canvas.drawText(timeText, bounds.centerX() - timePaint.measureText(timeText) / 2, timeOffsetY, timePaint);
+        private boolean isStaticLayerStale() {
+            return !staticLayerValid
+                    || layerDay != getDay()
+                    || layerHighTemp != highTemp
+                    || layerLowTemp != lowTemp
+                    || layerConditionsImage != currentConditionsImage;
+        }
+
+        private void drawStaticLayer(Rect bounds) {
+            layerDay = getDay();
+            layerHighTemp = highTemp;
+            layerLowTemp = lowTemp;
+            layerConditionsImage = currentConditionsImage;
+
+            drawBackground(staticLayerCanvas, bounds);
+            drawDate(staticLayerCanvas);
+            drawDividerLine(staticLayerCanvas);
+            drawWeatherIcon(staticLayerCanvas);
+            drawHighAndLowTemp(staticLayerCanvas);
+            staticLayerValid = true;
+            frameStats.layerRebuilt();
+        }
+
+        private int getDay() {
+            return currentTime.get(Calendar.YEAR) * 1000 + currentTime.get(Calendar.DAY_OF_YEAR);
         }
 
-        private void drawDate(Canvas canvas, Rect bounds){
-            String dateText = String.format("%s, %s %02d %04d",
-                    currentTime.getDisplayName(Calendar.DAY_OF_WEEK, Calendar.SHORT, Locale.getDefault()),
-                    currentTime.getDisplayName(Calendar.MONTH, Calendar.SHORT, Locale.getDefault()),
-                    currentTime.get(Calendar.DAY_OF_MONTH),
-                    currentTime.get(Calendar.YEAR));
-            canvas.drawText(dateText, bounds.centerX() - datePaint.measureText(dateText) / 2, dateOffsetY, datePaint);
+        private void updateLayout(Rect bounds) {
+            layoutWidth = bounds.width();
+            layoutHeight = bounds.height();
+            centerX = bounds.centerX();
+            lineStartX = layoutWidth * .25f;
+            lineEndX = layoutWidth * .75f;
+            weatherIconX = (layoutWidth * .15f) - weatherIconSize / 2;
+            weatherIconY = currentWeatherOffsetY - 45;
+
+            if (staticLayer != null) {
+                staticLayer.recycle();
+            }
+            staticLayer = Bitmap.createBitmap(layoutWidth, layoutHeight, Bitmap.Config.ARGB_8888);
+            staticLayerCanvas = new Canvas(staticLayer);
+            resetText();
         }
 
-        private void drawDividerLine(Canvas canvas, Rect bounds){
-            canvas.drawLine(bounds.width() * .25f, lineOffsetY, bounds.width() * .75f, lineOffsetY, linePaint);
+        // Makes the next frame rebuild and re-measure all of its text, and redraw the static layer.
+        private void resetText() {
+            staticLayerValid = false;
+            textMinute = -1;
+            textDay = -1;
+            textHighTemp = Integer.MIN_VALUE;
+            textLowTemp = Integer.MIN_VALUE;
         }
 
-        private void drawWeatherIcon(Canvas canvas, Rect bounds){
+        private void drawBackground(Canvas canvas, Rect bounds){
+            canvas.drawRect(0, 0, bounds.width(), bounds.height(), backgroundPaint);
+        }
+
+        // Both time paints have the same typeface and size, so the text measures the same.
+        private void drawTime(Canvas canvas, Paint paint, float shiftX, float shiftY){
+            int minute = currentTime.get(Calendar.HOUR_OF_DAY) * 60 + currentTime.get(Calendar.MINUTE);
+            if (minute != textMinute) {
+                textMinute = minute;
+                timeText = String.format("%d:%02d", currentTime.get(Calendar.HOUR_OF_DAY), currentTime.get(Calendar.MINUTE));
+                timeWidth = timePaint.measureText(timeText);
+                timeX = centerX - timeWidth / 2;
+            }
+            canvas.drawText(timeText, timeX + shiftX, timeOffsetY + shiftY, paint);
+        }
+
+        // Small seconds after the time, in the date's paint.
+        private void drawSeconds(Canvas canvas){
+            drawnSecond = currentTime.get(Calendar.SECOND);
+            canvas.drawText(SECONDS_TEXT[drawnSecond], timeX + timeWidth + secondsSpacing,
+                    timeOffsetY, datePaint);
+        }
+
+        private void drawDate(Canvas canvas){
+            int day = getDay();
+            if (day != textDay) {
+                textDay = day;
+                Locale locale = Locale.getDefault();
+                dateText = String.format("%s, %s %02d %04d",
+                        currentTime.getDisplayName(Calendar.DAY_OF_WEEK, Calendar.SHORT, locale),
+                        currentTime.getDisplayName(Calendar.MONTH, Calendar.SHORT, locale),
+                        currentTime.get(Calendar.DAY_OF_MONTH),
+                        currentTime.get(Calendar.YEAR));
+                dateX = centerX - datePaint.measureText(dateText) / 2;
+            }
+            canvas.drawText(dateText, dateX, dateOffsetY, datePaint);
+        }
+
+        private void drawDividerLine(Canvas canvas){
+            canvas.drawLine(lineStartX, lineOffsetY, lineEndX, lineOffsetY, linePaint);
+        }
+
+        private void drawWeatherIcon(Canvas canvas){
             if(currentConditionsImage != null){
-                int imageWidth = getApplicationContext().getResources().getDimensionPixelSize(R.dimen.weather_icon_size);
-                canvas.drawBitmap(currentConditionsImage, (bounds.width() * .15f) - imageWidth / 2, currentWeatherOffsetY - 45, null);
+                canvas.drawBitmap(currentConditionsImage, weatherIconX, weatherIconY, null);
             }
         }
 
-        private void drawHighAndLowTemp(Canvas canvas, Rect bounds){
+        private void drawHighAndLowTemp(Canvas canvas){
             if(highTemp == Integer.MIN_VALUE || lowTemp == Integer.MIN_VALUE){
                 return;
             }
 
-            String tempFormat = "%d\u00b0";
+            if (highTemp != textHighTemp || lowTemp != textLowTemp) {
+                textHighTemp = highTemp;
+                textLowTemp = lowTemp;
 
-            String highTempString = String.format(tempFormat, highTemp);
-            String lowTempString = String.format(tempFormat, lowTemp);
+                String tempFormat = "%d\u00b0";
 
-            canvas.drawText(highTempString, bounds.centerX() - highTempPaint.measureText(highTempString) / 2, currentWeatherOffsetY, highTempPaint);
-            canvas.drawText(lowTempString, (bounds.width() * .75f) - lowTempPaint.measureText(lowTempString) / 2, currentWeatherOffsetY, lowTempPaint);
+                highTempText = String.format(tempFormat, highTemp);
+                lowTempText = String.format(tempFormat, lowTemp);
+                highTempX = centerX - highTempPaint.measureText(highTempText) / 2;
+                lowTempX = lineEndX - lowTempPaint.measureText(lowTempText) / 2;
+            }
+
+            canvas.drawText(highTempText, highTempX, currentWeatherOffsetY, highTempPaint);
+            canvas.drawText(lowTempText, lowTempX, currentWeatherOffsetY, lowTempPaint);
         }
 
 
         /**
-         * Starts the {@link #engineUpdateHandler} timer if it should be running and isn't currently
-         * or stops it if it shouldn't be running but currently is.
+         * Starts the {@link #tickScheduler} if it should be running and isn't currently, or stops
+         * it if it shouldn't be running but currently is.
          */
         private void updateTimer() {
-            engineUpdateHandler.removeMessages(MSG_UPDATE_TIME);
             if (shouldTimerBeRunning()) {
-                engineUpdateHandler.sendEmptyMessage(MSG_UPDATE_TIME);
+                tickScheduler.start();
+            } else {
+                tickScheduler.stop();
             }
         }
 
@@ -364,34 +635,17 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             return isVisible() && !isInAmbientMode();
         }
 
-        private void handleUpdateTimeMessage() {
-            invalidate();
-            if (shouldTimerBeRunning()) {
-                long timeMs = System.currentTimeMillis();
-                long delayMs = INTERACTIVE_UPDATE_RATE_MS
-                        - (timeMs % INTERACTIVE_UPDATE_RATE_MS);
-                engineUpdateHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
-            }
-        }
-    }
-
-    private static class EngineHandler extends Handler {
-        private final WeakReference<SunshineWatchFace.Engine> mWeakReference;
-
-        public EngineHandler(SunshineWatchFace.Engine reference) {
-            mWeakReference = new WeakReference<>(reference);
-        }
-
-        @Override
-        public void handleMessage(Message msg) {
-            SunshineWatchFace.Engine engine = mWeakReference.get();
-            if (engine != null) {
-                switch (msg.what) {
-                    case MSG_UPDATE_TIME:
-                        engine.handleUpdateTimeMessage();
-                        break;
-                }
+        // Only redraws when the time on screen would actually change.
+        private boolean onInteractiveTick(long nowMillis) {
+            currentTime.setTimeInMillis(nowMillis);
+            int minute = currentTime.get(Calendar.HOUR_OF_DAY) * 60 + currentTime.get(Calendar.MINUTE);
+            boolean changed = tickScheduler.getMode() == TickScheduler.MODE_ANIMATION
+                    || minute != textMinute
+                    || (showSeconds && currentTime.get(Calendar.SECOND) != drawnSecond);
+            if (changed) {
+                invalidate();
             }
+            return changed;
         }
     }
 }
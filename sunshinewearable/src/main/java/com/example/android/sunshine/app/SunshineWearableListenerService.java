@@ -1,62 +1,96 @@
 package com.example.android.sunshine.app;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.util.Log;
 
-import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.wearable.Asset;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
 import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.DataMapItem;
-import com.google.android.gms.wearable.Wearable;
 import com.google.android.gms.wearable.WearableListenerService;
 
-import java.io.InputStream;
+import java.util.ArrayList;
 
+/**
+ * Receives the forecast from the handheld.  It comes as one data item per day under
+ * DAY_PATH_PREFIX plus a header at WEATHER_DATA_PATH that lists the current days and carries
+ * custom art; the handheld only sends the items that changed.  Everything is merged into the
+ * ForecastStore, and the watch face shows today's day from there.  Custom art is decoded by the
+ * AssetDecoder, off this thread.
+ */
 public class SunshineWearableListenerService extends WearableListenerService {
+    private static final String LOG_TAG = SunshineWearableListenerService.class.getSimpleName();
 
-    public static final String WEATHER_UPDATE_REQUEST = "/SunshineWearableListenerService/WeatherData";
+    // These must match the handheld's WearableForecastPublisher.
+    public static final String WEATHER_DATA_PATH = "/SunshineWearableListenerService/WeatherData";
+    public static final String DAY_PATH_PREFIX = WEATHER_DATA_PATH + "/day/";
+    public static final int PAYLOAD_VERSION = 2;
+
+    private static final String KEY_VERSION = "version";
+    private static final String KEY_DATES = "dates";
+    private static final String KEY_WEATHER_ICON = "weatherIcon";
+    private static final String KEY_DATE = "date";
+    private static final String KEY_WEATHER_ID = "weatherId";
+    private static final String KEY_HIGH = "high";
+    private static final String KEY_LOW = "low";
 
     @Override
     public void onDataChanged(DataEventBuffer dataEvents){
 
+        ArrayList<ForecastStore.Day> changedDays = new ArrayList<ForecastStore.Day>();
+        int[] currentDays = null;
+        boolean headerChanged = false;
+        Asset weatherIconAsset = null;
+
         for(int i = 0; i < dataEvents.getCount(); i++){
             DataEvent event = dataEvents.get(i);
+            String path = event.getDataItem().getUri().getPath();
+            if (event.getType() != DataEvent.TYPE_CHANGED
+                    || !(path.equals(WEATHER_DATA_PATH) || path.startsWith(DAY_PATH_PREFIX))) {
+                continue;
+            }
 
-            if(event.getType() == DataEvent.TYPE_CHANGED && event.getDataItem().getUri().getPath().equals(WEATHER_UPDATE_REQUEST)) {
-                DataMap dataMap = DataMapItem.fromDataItem(event.getDataItem()).getDataMap();
+            DataMap dataMap = DataMapItem.fromDataItem(event.getDataItem()).getDataMap();
+            int version = dataMap.getInt(KEY_VERSION, 0);
+            if (version != PAYLOAD_VERSION) {
+                Log.w(LOG_TAG, "Ignoring " + path + " with unknown payload version " + version);
+                continue;
+            }
 
-                SunshineWatchFace.highTemp = dataMap.getInt("high");
-                SunshineWatchFace.lowTemp = dataMap.getInt("low");
-                Asset weatherIconAsset = dataMap.getAsset("weatherIcon");
-                loadBitmapFromAsset(weatherIconAsset);
+            if (path.equals(WEATHER_DATA_PATH)) {
+                headerChanged = true;
+                long[] dates = dataMap.getLongArray(KEY_DATES);
+                currentDays = new int[dates != null ? dates.length : 0];
+                for (int j = 0; j < currentDays.length; j++) {
+                    currentDays[j] = ForecastStore.getJulianDay(dates[j]);
+                }
+                weatherIconAsset = dataMap.getAsset(KEY_WEATHER_ICON);
+            } else {
+                changedDays.add(new ForecastStore.Day(
+                        ForecastStore.getJulianDay(dataMap.getLong(KEY_DATE)),
+                        dataMap.getInt(KEY_WEATHER_ID, -1),
+                        dataMap.getInt(KEY_HIGH),
+                        dataMap.getInt(KEY_LOW)));
             }
         }
-    }
 
-    private void loadBitmapFromAsset(Asset weatherIconAsset){
-        if(null == weatherIconAsset){
+        if (changedDays.isEmpty() && !headerChanged) {
             return;
         }
 
-        final GoogleApiClient googleApiClient = getGoogleApiClient();
-        googleApiClient.connect();
-        InputStream assetInputStream = Wearable.DataApi.getFdForAsset(
-                googleApiClient, weatherIconAsset).await().getInputStream();
-        googleApiClient.disconnect();
+        ForecastStore store = ForecastStore.getInstance(this);
+        store.update(changedDays, currentDays, System.currentTimeMillis());
 
-        if (assetInputStream == null) {
-            return;
+        // A new header decides the art: custom art if it carries some, our own otherwise.
+        AssetDecoder decoder = AssetDecoder.getInstance(this);
+        if (headerChanged) {
+            decoder.cancel();
         }
+        SunshineWatchFace.postStoredForecast(getApplicationContext(), headerChanged);
 
-        SunshineWatchFace.currentConditionsImage = BitmapFactory.decodeStream(assetInputStream);
-        SunshineWatchFace.updateWatchFace();
-    }
-
-    private GoogleApiClient getGoogleApiClient(){
-        return new GoogleApiClient.Builder(this)
-                .addApi(Wearable.API)
-                .build();
+        ForecastStore.Day today = store.getDay(System.currentTimeMillis());
+        if (weatherIconAsset != null && today != null) {
+            decoder.decode(weatherIconAsset, today.weatherId);
+        }
     }
 }
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.Handler;
+import android.os.Message;
+import android.util.Log;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Drives the watch face's interactive updates.  Ticks land on wall-clock boundaries for the
+ * current mode (the top of each minute or second, or every animation frame), and the callback
+ * decides whether the tick changed anything worth redrawing.  Ticks that arrive late, or so late
+ * that whole intervals were missed, are counted, as are the ones the callback skipped.
+ */
+public class TickScheduler {
+    private static final String LOG_TAG = TickScheduler.class.getSimpleName();
+
+    public static final int MODE_MINUTE = 0;
+    public static final int MODE_SECOND = 1;
+    public static final int MODE_ANIMATION = 2;
+
+    private static final long MINUTE_INTERVAL_MS = 60 * 1000;
+    private static final long SECOND_INTERVAL_MS = 1000;
+    // About 30 frames a second.
+    private static final long ANIMATION_INTERVAL_MS = 33;
+
+    // A tick this much after its boundary counts as late.
+    private static final long LATE_TOLERANCE_MS = 20;
+
+    private static final int MSG_TICK = 0;
+
+    public interface Callback {
+        /**
+         * @return true if the tick changed what's on screen and the face was invalidated.
+         */
+        boolean onTick(long nowMillis);
+    }
+
+    private final Callback callback;
+    private final Handler handler = new TickHandler(this);
+
+    private int mode = MODE_MINUTE;
+    private boolean running;
+    private long scheduledMillis;
+
+    private int tickCount;
+    private int skippedCount;
+    private int lateCount;
+    private int missedCount;
+
+    public TickScheduler(Callback callback) {
+        this.callback = callback;
+    }
+
+    public void setMode(int mode) {
+        if (this.mode == mode) {
+            return;
+        }
+        this.mode = mode;
+        if (running) {
+            // Tick now so the new mode takes effect straight away.
+            stop();
+            start();
+        }
+    }
+
+    public int getMode() {
+        return mode;
+    }
+
+    /**
+     * Ticks straight away, and then on every boundary until {@link #stop()}.
+     */
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        scheduledMillis = System.currentTimeMillis();
+        handler.sendEmptyMessage(MSG_TICK);
+    }
+
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        handler.removeMessages(MSG_TICK);
+        Log.d(LOG_TAG, "Ticks " + tickCount + " (" + skippedCount + " skipped), late "
+                + lateCount + ", missed " + missedCount);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getTickCount() {
+        return tickCount;
+    }
+
+    public int getSkippedCount() {
+        return skippedCount;
+    }
+
+    public int getLateCount() {
+        return lateCount;
+    }
+
+    public int getMissedCount() {
+        return missedCount;
+    }
+
+    private long getInterval() {
+        switch (mode) {
+            case MODE_SECOND:
+                return SECOND_INTERVAL_MS;
+            case MODE_ANIMATION:
+                return ANIMATION_INTERVAL_MS;
+            default:
+                return MINUTE_INTERVAL_MS;
+        }
+    }
+
+    private void tick() {
+        long interval = getInterval();
+        long now = System.currentTimeMillis();
+
+        long lateness = now - scheduledMillis;
+        if (lateness >= interval) {
+            missedCount += lateness / interval;
+        } else if (lateness > LATE_TOLERANCE_MS) {
+            lateCount++;
+        }
+
+        tickCount++;
+        if (!callback.onTick(now)) {
+            skippedCount++;
+        }
+
+        if (running) {
+            scheduledMillis = (now / interval + 1) * interval;
+            handler.sendEmptyMessageDelayed(MSG_TICK, scheduledMillis - now);
+        }
+    }
+
+    private static class TickHandler extends Handler {
+        private final WeakReference<TickScheduler> mWeakReference;
+
+        public TickHandler(TickScheduler reference) {
+            mWeakReference = new WeakReference<>(reference);
+        }
+
+        @Override
+        public void handleMessage(Message msg) {
+            TickScheduler scheduler = mWeakReference.get();
+            if (scheduler != null && msg.what == MSG_TICK) {
+                scheduler.tick();
+            }
+        }
+    }
+}
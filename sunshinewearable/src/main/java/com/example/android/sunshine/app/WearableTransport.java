@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.Asset;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The watch's one connection to the Wearable Data Layer.  Callers queue {@link PutDataRequest}s
+ * from any thread and return straight away; a background thread connects a single shared
+ * {@link GoogleApiClient} (blocking, with a timeout), pushes everything queued in one batch, and
+ * keeps the client connected for the next batch until it has been idle for a while.
+ *
+ * Only the newest request for each data item path is kept, since the Data Layer would replace
+ * the older one anyway.  A request that can't be sent is retried a few times, on its own count
+ * and schedule, before it is dropped, and every connect, push and failure is counted.  Assets
+ * sent by the handheld are read over the same connection.
+ */
+public class WearableTransport {
+    private static final String LOG_TAG = WearableTransport.class.getSimpleName();
+
+    private static final long CONNECT_TIMEOUT_SECONDS = 15;
+    private static final long PUSH_TIMEOUT_SECONDS = 15;
+    private static final long ASSET_TIMEOUT_SECONDS = 15;
+
+    // How long to wait for more requests before pushing a batch.
+    private static final long FLUSH_DELAY_MS = 500;
+    private static final long RETRY_DELAY_MS = 30 * 1000;
+    private static final int MAX_FLUSH_ATTEMPTS = 3;
+    private static final long IDLE_DISCONNECT_MS = 5 * 60 * 1000;
+
+    private static final int MSG_FLUSH = 0;
+    private static final int MSG_DISCONNECT = 1;
+
+    private static WearableTransport sInstance;
+
+    private final GoogleApiClient mGoogleApiClient;
+    // Held while connecting, disconnecting or using the client outside the transport thread.
+    private final Object mClientLock = new Object();
+    private final Handler mHandler;
+
+    /**
+     * A queued request, and how often it has failed.
+     */
+    private static final class Pending {
+        final PutDataRequest request;
+        final int attempts;
+        // elapsedRealtime before which a failed request isn't tried again.
+        final long retryAtMillis;
+
+        Pending(PutDataRequest request, int attempts, long retryAtMillis) {
+            this.request = request;
+            this.attempts = attempts;
+            this.retryAtMillis = retryAtMillis;
+        }
+    }
+
+    // data item path -> newest request for it.  Guarded by this.
+    private final LinkedHashMap<String, Pending> mPending = new LinkedHashMap<String, Pending>();
+
+    private final AtomicInteger mConnectCount = new AtomicInteger();
+    private final AtomicInteger mConnectFailureCount = new AtomicInteger();
+    private final AtomicInteger mPushCount = new AtomicInteger();
+    private final AtomicInteger mPushFailureCount = new AtomicInteger();
+    private final AtomicInteger mDroppedCount = new AtomicInteger();
+
+    public static synchronized WearableTransport getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WearableTransport(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private WearableTransport(Context context) {
+        mGoogleApiClient = new GoogleApiClient.Builder(context)
+                .addApi(Wearable.API)
+                .build();
+        HandlerThread thread = new HandlerThread(LOG_TAG);
+        thread.start();
+        mHandler = new Handler(thread.getLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                switch (msg.what) {
+                    case MSG_FLUSH:
+                        flush();
+                        break;
+                    case MSG_DISCONNECT:
+                        synchronized (mClientLock) {
+                            mGoogleApiClient.disconnect();
+                        }
+                        break;
+                }
+            }
+        };
+    }
+
+    /**
+     * Queues a request to be pushed with the next batch, replacing any queued request for the
+     * same path.
+     */
+    public void enqueue(PutDataRequest request) {
+        synchronized (this) {
+            // A new request for the path starts with a clean slate; the others keep their counts.
+            mPending.put(request.getUri().getPath(), new Pending(request, 0, 0));
+        }
+        // Replaces a pending retry, which would make this request wait much longer.
+        mHandler.removeMessages(MSG_FLUSH);
+        mHandler.sendEmptyMessageDelayed(MSG_FLUSH, FLUSH_DELAY_MS);
+    }
+
+    /**
+     * Opens an asset over the shared connection.  Blocks, so don't call it on the main thread.
+     *
+     * @return the asset's contents, or null if it couldn't be read in time.
+     */
+    public InputStream openAsset(Asset asset) {
+        synchronized (mClientLock) {
+            mHandler.removeMessages(MSG_DISCONNECT);
+            try {
+                if (!connect()) {
+                    return null;
+                }
+                DataApi.GetFdForAssetResult result = Wearable.DataApi.getFdForAsset(
+                        mGoogleApiClient, asset).await(ASSET_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                if (!result.getStatus().isSuccess()) {
+                    Log.w(LOG_TAG, "Failed to open asset: " + result.getStatus());
+                    return null;
+                }
+                return result.getInputStream();
+            } finally {
+                mHandler.sendEmptyMessageDelayed(MSG_DISCONNECT, IDLE_DISCONNECT_MS);
+            }
+        }
+    }
+
+    public int getConnectCount() {
+        return mConnectCount.get();
+    }
+
+    public int getConnectFailureCount() {
+        return mConnectFailureCount.get();
+    }
+
+    public int getPushCount() {
+        return mPushCount.get();
+    }
+
+    public int getPushFailureCount() {
+        return mPushFailureCount.get();
+    }
+
+    public int getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    // Runs on the transport thread.
+    private void flush() {
+        mHandler.removeMessages(MSG_DISCONNECT);
+        long now = SystemClock.elapsedRealtime();
+        ArrayList<Pending> batch = new ArrayList<Pending>();
+        synchronized (this) {
+            // Failed requests wait out their retry delay, even if something new is sent sooner.
+            Iterator<Pending> it = mPending.values().iterator();
+            while (it.hasNext()) {
+                Pending pending = it.next();
+                if (pending.retryAtMillis <= now) {
+                    batch.add(pending);
+                    it.remove();
+                }
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            ArrayList<Pending> failed = new ArrayList<Pending>();
+            synchronized (mClientLock) {
+                if (connect()) {
+                    for (Pending pending : batch) {
+                        DataApi.DataItemResult result = Wearable.DataApi.putDataItem(
+                                mGoogleApiClient, pending.request).await(PUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                        if (result.getStatus().isSuccess()) {
+                            mPushCount.incrementAndGet();
+                        } else {
+                            mPushFailureCount.incrementAndGet();
+                            Log.w(LOG_TAG, "Failed to push " + pending.request.getUri().getPath()
+                                    + ": " + result.getStatus());
+                            failed.add(pending);
+                        }
+                    }
+                } else {
+                    failed.addAll(batch);
+                }
+            }
+
+            synchronized (this) {
+                int dropped = 0;
+                for (Pending pending : failed) {
+                    String path = pending.request.getUri().getPath();
+                    if (pending.attempts + 1 >= MAX_FLUSH_ATTEMPTS) {
+                        dropped++;
+                    } else if (!mPending.containsKey(path)) {
+                        // Requests queued since the batch was taken are newer, so they win.
+                        mPending.put(path, new Pending(pending.request, pending.attempts + 1,
+                                now + RETRY_DELAY_MS));
+                    }
+                }
+                if (dropped > 0) {
+                    mDroppedCount.addAndGet(dropped);
+                    Log.w(LOG_TAG, "Dropping " + dropped + " requests after "
+                            + MAX_FLUSH_ATTEMPTS + " attempts");
+                }
+            }
+            Log.d(LOG_TAG, "Pushed batch of " + batch.size() + ". Connects " + mConnectCount
+                    + " (" + mConnectFailureCount + " failed), pushes " + mPushCount
+                    + " (" + mPushFailureCount + " failed), dropped " + mDroppedCount);
+        }
+
+        scheduleRetry();
+        mHandler.sendEmptyMessageDelayed(MSG_DISCONNECT, IDLE_DISCONNECT_MS);
+    }
+
+    // Schedules a flush for the earliest request still waiting to be retried.  Runs on the
+    // transport thread.
+    private void scheduleRetry() {
+        long retryAtMillis = Long.MAX_VALUE;
+        synchronized (this) {
+            for (Pending pending : mPending.values()) {
+                retryAtMillis = Math.min(retryAtMillis, pending.retryAtMillis);
+            }
+        }
+        if (retryAtMillis != Long.MAX_VALUE && !mHandler.hasMessages(MSG_FLUSH)) {
+            long delay = Math.max(retryAtMillis - SystemClock.elapsedRealtime(), FLUSH_DELAY_MS);
+            mHandler.sendEmptyMessageDelayed(MSG_FLUSH, delay);
+        }
+    }
+
+    // Must be called with mClientLock held.
+    private boolean connect() {
+        if (mGoogleApiClient.isConnected()) {
+            return true;
+        }
+        ConnectionResult result =
+                mGoogleApiClient.blockingConnect(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (result.isSuccess()) {
+            mConnectCount.incrementAndGet();
+            return true;
+        }
+        mConnectFailureCount.incrementAndGet();
+        Log.w(LOG_TAG, "Failed to connect to the wearable API: " + result);
+        return false;
+    }
+}
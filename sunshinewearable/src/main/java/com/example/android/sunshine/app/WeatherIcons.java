@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.LruCache;
+
+/**
+ * The watch's copy of the Sunshine condition art.  The handheld only sends a weather id, and the
+ * icon for it is decoded from the bundled drawables here, already scaled to the size the watch
+ * face draws it at.  Decoded icons are kept in a small LRU so a condition seen before costs
+ * nothing to show again.
+ */
+public class WeatherIcons {
+
+    // Only a handful of conditions come up in practice; this comfortably holds all eight icons.
+    private static final int CACHE_SIZE_KIB = 256;
+
+    private static final LruCache<Integer, Bitmap> sIcons =
+            new LruCache<Integer, Bitmap>(CACHE_SIZE_KIB) {
+                @Override
+                protected int sizeOf(Integer key, Bitmap value) {
+                    return value.getByteCount() / 1024;
+                }
+            };
+
+    private WeatherIcons() {
+    }
+
+    /**
+     * @return the icon for the condition, scaled to R.dimen.weather_icon_size, or null if the
+     * condition has no art.
+     */
+    public static Bitmap getIcon(Context context, int weatherId) {
+        int resourceId = getArtResourceForWeatherCondition(weatherId);
+        if (resourceId == -1) {
+            return null;
+        }
+
+        Bitmap icon = sIcons.get(resourceId);
+        if (icon == null) {
+            int size = context.getResources().getDimensionPixelSize(R.dimen.weather_icon_size);
+            icon = scale(decodeUnscaled(context, resourceId), size);
+            sIcons.put(resourceId, icon);
+        }
+        return icon;
+    }
+
+    /**
+     * Scales a bitmap to the square size the watch face draws icons at, recycling the original
+     * if a copy had to be made.
+     */
+    public static Bitmap scale(Bitmap bitmap, int size) {
+        if (bitmap.getWidth() == size && bitmap.getHeight() == size) {
+            return bitmap;
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap, size, size, true);
+        if (scaled != bitmap) {
+            bitmap.recycle();
+        }
+        return scaled;
+    }
+
+    // The drawables are only ever scaled once, to the icon size, so skip the density scaling.
+    private static Bitmap decodeUnscaled(Context context, int resourceId) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inScaled = false;
+        return BitmapFactory.decodeResource(context.getResources(), resourceId, options);
+    }
+
+    /**
+     * Same mapping as the handheld's Utility.getArtResourceForWeatherCondition.
+     *
+     * @param weatherId from OpenWeatherMap API response
+     * @return resource id for the corresponding image. -1 if no relation is found.
+     */
+    public static int getArtResourceForWeatherCondition(int weatherId) {
+        // Based on weather code data found at:
+        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.art_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.art_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.art_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.art_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.art_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.art_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.art_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.art_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.art_clouds;
+        }
+        return -1;
+    }
+}